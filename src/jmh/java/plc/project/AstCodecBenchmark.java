@@ -0,0 +1,59 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares loading a source from its {@link AstCodec} encoding against lexing
+ * and parsing its text. Run with {@code gradle jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AstCodecBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int functions;
+
+    private final AstCodec codec = new AstCodec();
+    private String input;
+    private Ast.Source source;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        input = ProgramGenerator.functions(functions);
+        source = new Parser(new DfaLexer(input).lexBuffer()).parseSource();
+        encoded = codec.encode(source);
+    }
+
+    @Benchmark
+    public Ast.Source parse() {
+        return new Parser(new DfaLexer(input).lexBuffer()).parseSource();
+    }
+
+    @Benchmark
+    public Ast.Source decode() {
+        return codec.decode(encoded);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(source);
+    }
+
+}
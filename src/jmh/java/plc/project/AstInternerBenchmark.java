@@ -0,0 +1,69 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures interning a parsed source, and compares checking two equal sources
+ * for equality structurally against comparing their interned statements by
+ * identity. Run with {@code gradle jmh}; the gc profiler reports the
+ * allocations of each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AstInternerBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int count;
+
+    private Ast.Source source;
+    private Ast.Source copy;
+    private Ast.Source interned;
+    private Ast.Source internedCopy;
+
+    @Setup
+    public void setup() {
+        String text = ProgramGenerator.program(count);
+        source = new Parser(new DfaLexer(text).lexBuffer()).parseSource();
+        copy = new Parser(new DfaLexer(text).lexBuffer()).parseSource();
+        AstInterner interner = new AstInterner();
+        interned = interner.intern(source);
+        internedCopy = interner.intern(copy);
+    }
+
+    @Benchmark
+    public Ast.Source intern() {
+        return new AstInterner().intern(source);
+    }
+
+    @Benchmark
+    public boolean equals() {
+        return source.equals(copy);
+    }
+
+    @Benchmark
+    public boolean identical() {
+        for (int i = 0; i < interned.getFunctions().size(); i++) {
+            if (interned.getFunctions().get(i).getStatements() != internedCopy.getFunctions().get(i).getStatements()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,233 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost per node of {@link Ast.Visitor#visit(Ast)}, which switches
+ * on {@link Ast#getKind()}, against the chain of {@code instanceof} checks it
+ * replaced, for nodes of every kind in random order or only lists, which were
+ * checked last. The visitor does no work besides returning a constant. Run
+ * with {@code gradle jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    private static final int NODES = 1024;
+
+    @Param({"mixed", "list"})
+    public String nodes;
+
+    private final Ast[] asts = new Ast[NODES];
+    private final Ast.Visitor<Integer> visitor = new ConstantVisitor();
+
+    @Setup
+    public void setup() {
+        Ast.Expression literal = new Ast.Expression.Literal(BigInteger.ONE);
+        Ast.Expression access = new Ast.Expression.Access(Optional.empty(), "x");
+        Ast.Statement.Case defaultCase = new Ast.Statement.Case(Optional.empty(), new ArrayList<>());
+        Ast[] samples = {
+                new Ast.Source(new ArrayList<>(), new ArrayList<>()),
+                new Ast.Global("x", "Integer", true, Optional.of(literal)),
+                new Ast.Function("f", new ArrayList<>(), new ArrayList<>(), Optional.empty(), new ArrayList<>()),
+                new Ast.Statement.Expression(literal),
+                new Ast.Statement.Declaration("x", Optional.of(literal)),
+                new Ast.Statement.Assignment(access, literal),
+                new Ast.Statement.If(literal, new ArrayList<>(), new ArrayList<>()),
+                new Ast.Statement.Switch(literal, Arrays.asList(defaultCase)),
+                defaultCase,
+                new Ast.Statement.While(literal, new ArrayList<>()),
+                new Ast.Statement.Return(literal),
+                new Ast.Statement.Error("Invalid expression", 0),
+                literal,
+                new Ast.Expression.Group(literal),
+                new Ast.Expression.Binary("+", literal, literal),
+                access,
+                new Ast.Expression.Function("f", new ArrayList<>()),
+                new Ast.Expression.PlcList(Arrays.asList(literal)),
+        };
+        Random random = new Random(0);
+        for (int i = 0; i < NODES; i++) {
+            asts[i] = nodes.equals("list") ? samples[samples.length - 1] : samples[random.nextInt(samples.length)];
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NODES)
+    public int kind() {
+        int sum = 0;
+        for (Ast ast : asts) {
+            sum += visitor.visit(ast);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NODES)
+    public int instanceOf() {
+        int sum = 0;
+        for (Ast ast : asts) {
+            sum += visitByInstanceOf(visitor, ast);
+        }
+        return sum;
+    }
+
+    private static <T> T visitByInstanceOf(Ast.Visitor<T> visitor, Ast ast) {
+        if (ast instanceof Ast.Source) {
+            return visitor.visit((Ast.Source) ast);
+        } else if (ast instanceof Ast.Global) {
+            return visitor.visit((Ast.Global) ast);
+        } else if (ast instanceof Ast.Function) {
+            return visitor.visit((Ast.Function) ast);
+        } else if (ast instanceof Ast.Statement.Expression) {
+            return visitor.visit((Ast.Statement.Expression) ast);
+        } else if (ast instanceof Ast.Statement.Declaration) {
+            return visitor.visit((Ast.Statement.Declaration) ast);
+        } else if (ast instanceof Ast.Statement.Assignment) {
+            return visitor.visit((Ast.Statement.Assignment) ast);
+        } else if (ast instanceof Ast.Statement.If) {
+            return visitor.visit((Ast.Statement.If) ast);
+        } else if (ast instanceof Ast.Statement.Switch) {
+            return visitor.visit((Ast.Statement.Switch) ast);
+        } else if (ast instanceof Ast.Statement.Case) {
+            return visitor.visit((Ast.Statement.Case) ast);
+        } else if (ast instanceof Ast.Statement.While) {
+            return visitor.visit((Ast.Statement.While) ast);
+        } else if (ast instanceof Ast.Statement.Return) {
+            return visitor.visit((Ast.Statement.Return) ast);
+        } else if (ast instanceof Ast.Statement.Error) {
+            return visitor.visit((Ast.Statement.Error) ast);
+        } else if (ast instanceof Ast.Expression.Literal) {
+            return visitor.visit((Ast.Expression.Literal) ast);
+        } else if (ast instanceof Ast.Expression.Group) {
+            return visitor.visit((Ast.Expression.Group) ast);
+        } else if (ast instanceof Ast.Expression.Binary) {
+            return visitor.visit((Ast.Expression.Binary) ast);
+        } else if (ast instanceof Ast.Expression.Access) {
+            return visitor.visit((Ast.Expression.Access) ast);
+        } else if (ast instanceof Ast.Expression.Function) {
+            return visitor.visit((Ast.Expression.Function) ast);
+        } else if (ast instanceof Ast.Expression.PlcList) {
+            return visitor.visit((Ast.Expression.PlcList) ast);
+        } else {
+            throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+        }
+    }
+
+    private static final class ConstantVisitor implements Ast.Visitor<Integer> {
+
+        @Override
+        public Integer visit(Ast.Source ast) {
+            return 0;
+        }
+
+        @Override
+        public Integer visit(Ast.Global ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Function ast) {
+            return 2;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Expression ast) {
+            return 3;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Declaration ast) {
+            return 4;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Assignment ast) {
+            return 5;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.If ast) {
+            return 6;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Switch ast) {
+            return 7;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Case ast) {
+            return 8;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.While ast) {
+            return 9;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Return ast) {
+            return 10;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Error ast) {
+            return 11;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Literal ast) {
+            return 12;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Group ast) {
+            return 13;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Binary ast) {
+            return 14;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Access ast) {
+            return 15;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Function ast) {
+            return 16;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.PlcList ast) {
+            return 17;
+        }
+
+    }
+
+}
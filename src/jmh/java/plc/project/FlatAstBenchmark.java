@@ -0,0 +1,137 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares counting the literals of a source by traversing its {@link Ast}
+ * against its {@link FlatAst}, either with a cursor or by scanning the node
+ * records in order, and measures converting between the two. Run with {@code
+ * gradle jmh}; the gc profiler reports the allocations of each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlatAstBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int count;
+
+    private Ast.Source source;
+    private FlatAst flat;
+
+    @Setup
+    public void setup() {
+        source = new Parser(new DfaLexer(ProgramGenerator.program(count)).lexBuffer()).parseSource();
+        flat = FlatAst.of(source);
+    }
+
+    @Benchmark
+    public int tree() {
+        return literals(source);
+    }
+
+    @Benchmark
+    public int cursor() {
+        int[] literals = {0};
+        flat.walk(cursor -> {
+            if (cursor.getKind() == Ast.LITERAL) {
+                literals[0]++;
+            }
+            return true;
+        });
+        return literals[0];
+    }
+
+    @Benchmark
+    public int scan() {
+        int literals = 0;
+        for (int node = 0; node < flat.size(); node++) {
+            if (flat.getKind(node) == Ast.LITERAL) {
+                literals++;
+            }
+        }
+        return literals;
+    }
+
+    @Benchmark
+    public FlatAst flatten() {
+        return FlatAst.of(source);
+    }
+
+    @Benchmark
+    public Ast.Source expand() {
+        return flat.toAst();
+    }
+
+    private static int literals(Ast ast) {
+        switch (ast.getKind()) {
+            case Ast.SOURCE:
+                return literals(((Ast.Source) ast).getGlobals()) + literals(((Ast.Source) ast).getFunctions());
+            case Ast.GLOBAL:
+                return literals(((Ast.Global) ast).getValue());
+            case Ast.FUNCTION:
+                return literals(((Ast.Function) ast).getStatements());
+            case Ast.EXPRESSION_STATEMENT:
+                return literals(((Ast.Statement.Expression) ast).getExpression());
+            case Ast.DECLARATION:
+                return literals(((Ast.Statement.Declaration) ast).getValue());
+            case Ast.ASSIGNMENT:
+                return literals(((Ast.Statement.Assignment) ast).getReceiver()) + literals(((Ast.Statement.Assignment) ast).getValue());
+            case Ast.IF:
+                return literals(((Ast.Statement.If) ast).getCondition()) + literals(((Ast.Statement.If) ast).getThenStatements())
+                        + literals(((Ast.Statement.If) ast).getElseStatements());
+            case Ast.SWITCH:
+                return literals(((Ast.Statement.Switch) ast).getCondition()) + literals(((Ast.Statement.Switch) ast).getCases());
+            case Ast.CASE:
+                return literals(((Ast.Statement.Case) ast).getValue()) + literals(((Ast.Statement.Case) ast).getStatements());
+            case Ast.WHILE:
+                return literals(((Ast.Statement.While) ast).getCondition()) + literals(((Ast.Statement.While) ast).getStatements());
+            case Ast.RETURN:
+                return literals(((Ast.Statement.Return) ast).getValue());
+            case Ast.LITERAL:
+                return 1;
+            case Ast.GROUP:
+                return literals(((Ast.Expression.Group) ast).getExpression());
+            case Ast.BINARY:
+                return literals(((Ast.Expression.Binary) ast).getLeft()) + literals(((Ast.Expression.Binary) ast).getRight());
+            case Ast.ACCESS:
+                return literals(((Ast.Expression.Access) ast).getOffset());
+            case Ast.CALL:
+                return literals(((Ast.Expression.Function) ast).getArguments());
+            case Ast.LIST:
+                return literals(((Ast.Expression.PlcList) ast).getValues());
+            default:
+                return 0;
+        }
+    }
+
+    private static int literals(List<? extends Ast> asts) {
+        int literals = 0;
+        for (Ast ast : asts) {
+            literals += literals(ast);
+        }
+        return literals;
+    }
+
+    private static int literals(Optional<Ast.Expression> ast) {
+        return ast.isPresent() ? literals(ast.get()) : 0;
+    }
+
+}
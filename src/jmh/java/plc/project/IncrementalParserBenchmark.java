@@ -0,0 +1,57 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures applying an edit within one function body, either by reparsing
+ * the function with {@link IncrementalParser} or the whole source. Each
+ * invocation inserts and removes a space so the text stays the same. Run with
+ * {@code gradle jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IncrementalParserBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int count;
+
+    private IncrementalParser parser;
+    private int offset;
+
+    @Setup
+    public void setup() {
+        String input = ProgramGenerator.program(count);
+        parser = new IncrementalParser(input);
+        offset = input.indexOf("RETURN", input.length() / 2);
+    }
+
+    @Benchmark
+    public Ast.Source incremental() {
+        parser.edit(offset, offset, " ");
+        return parser.edit(offset, offset + 1, "");
+    }
+
+    @Benchmark
+    public Ast.Source full() {
+        String text = parser.getText();
+        new Parser(new DfaLexer(text.substring(0, offset) + " " + text.substring(offset)).lexBuffer()).parseSource();
+        return new Parser(new DfaLexer(text).lexBuffer()).parseSource();
+    }
+
+}
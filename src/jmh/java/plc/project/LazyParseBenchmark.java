@@ -0,0 +1,51 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from tokens to the result of {@code main} for a library
+ * whose functions are never called, parsing function bodies either eagerly
+ * or lazily. Run with {@code gradle jmh}.
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LazyParseBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int functions;
+
+    private TokenBuffer buffer;
+
+    @Setup
+    public void setup() {
+        buffer = new DfaLexer(ProgramGenerator.library(functions)).lexBuffer();
+    }
+
+    @Benchmark
+    public Environment.PlcObject eager() {
+        return new Interpreter(new Scope(null)).visit(new Parser(buffer).parseSource());
+    }
+
+    @Benchmark
+    public Environment.PlcObject lazy() {
+        Parser parser = new Parser(buffer);
+        parser.setLazy(true);
+        return new Interpreter(new Scope(null)).visit(parser.parseSource());
+    }
+
+}
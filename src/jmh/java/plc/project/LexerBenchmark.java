@@ -0,0 +1,62 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the regex-based {@link Lexer} against the table-driven {@link
+ * DfaLexer} on the same input, producing token objects with copied literals,
+ * token objects with literal views, and a packed {@link TokenBuffer}. Run with
+ * {@code gradle jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int functions;
+
+    private String input;
+
+    @Setup
+    public void setup() {
+        input = ProgramGenerator.functions(functions);
+    }
+
+    @Benchmark
+    public List<Token> regex() {
+        return new Lexer(input).lex();
+    }
+
+    @Benchmark
+    public List<Token> dfa() {
+        return new DfaLexer(input).lex();
+    }
+
+    @Benchmark
+    public List<Token> dfaViews() {
+        return new DfaLexer(new Lexer.CharStream(input, true)).lex();
+    }
+
+    @Benchmark
+    public TokenBuffer dfaBuffer() {
+        return new DfaLexer(input).lexBuffer();
+    }
+
+}
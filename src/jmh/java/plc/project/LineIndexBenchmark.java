@@ -0,0 +1,75 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building a {@link LineIndex} against counting lines one character
+ * at a time, and measures resolving indices to lines and columns once the
+ * index is built. Run with {@code gradle jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineIndexBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int count;
+
+    private String source;
+    private LineIndex index;
+    private int[] indices;
+
+    @Setup
+    public void setup() {
+        source = ProgramGenerator.program(count);
+        index = new LineIndex(source);
+        index.getLineCount();
+        Random random = new Random(0);
+        indices = new int[1024];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = random.nextInt(source.length());
+        }
+    }
+
+    @Benchmark
+    public int build() {
+        return new LineIndex(source).getLineCount();
+    }
+
+    @Benchmark
+    public int scan() {
+        int lines = 1;
+        for (int i = 0; i < source.length(); i++) {
+            if (source.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    @Benchmark
+    public int resolve() {
+        int sum = 0;
+        for (int i : indices) {
+            sum += index.getLine(i) + index.getColumn(i);
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,73 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares lexing a file from a memory mapped {@link ByteBufferCharStream}
+ * against reading the whole file into a string first. Since every benchmark
+ * runs in its own fork, the peak resident set size printed at the end of each
+ * fork (Linux only) is the peak for that benchmark alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappedLexerBenchmark {
+
+    @Param({"1000", "10000"})
+    public int functions;
+
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        file = Files.createTempFile("benchmark", ".plc");
+        Files.write(file, ProgramGenerator.functions(functions).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.delete(file);
+        Path status = Paths.get("/proc/self/status");
+        if (Files.exists(status)) {
+            Files.lines(status).filter(line -> line.startsWith("VmHWM")).forEach(System.out::println);
+        }
+    }
+
+    @Benchmark
+    public List<Token> readStringRegex() throws IOException {
+        return new Lexer(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)).lex();
+    }
+
+    @Benchmark
+    public List<Token> readStringDfa() throws IOException {
+        return new DfaLexer(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)).lex();
+    }
+
+    @Benchmark
+    public List<Token> mappedDfa() throws IOException {
+        return new DfaLexer(ByteBufferCharStream.map(file)).lex();
+    }
+
+}
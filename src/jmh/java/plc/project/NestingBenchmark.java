@@ -0,0 +1,52 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares recursive and stack-safe parsing of deeply nested blocks and
+ * expressions. The depths are kept low enough for the recursive parser to
+ * finish on the default thread stack. Run with {@code gradle jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NestingBenchmark {
+
+    @Param({"10", "100", "400"})
+    public int depth;
+
+    private TokenBuffer buffer;
+
+    @Setup
+    public void setup() {
+        buffer = new DfaLexer(ProgramGenerator.nested(depth)).lexBuffer();
+    }
+
+    @Benchmark
+    public Ast.Source recursive() {
+        return new Parser(buffer).parseSource();
+    }
+
+    @Benchmark
+    public Ast.Source stackSafe() {
+        Parser parser = new Parser(buffer);
+        parser.setStackSafe(true);
+        return parser.parseSource();
+    }
+
+}
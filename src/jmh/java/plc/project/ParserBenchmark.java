@@ -0,0 +1,73 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parse throughput on tokens lexed ahead of time, both from token
+ * objects and from a packed {@link TokenBuffer}, as well as lexing and parsing
+ * together. The parser dispatches on the {@link Symbol} codes attached by
+ * {@link DfaLexer}. Run with {@code gradle jmh}.
+ *
+ * {@link #parseSignatures()} parses lazily, so function bodies are only
+ * skipped over by matching tokens. Its allocation rate from the gc profiler
+ * therefore grows with the number of functions but not with the number of
+ * tokens they contain.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int functions;
+
+    private String input;
+    private List<Token> tokens;
+    private TokenBuffer buffer;
+
+    @Setup
+    public void setup() {
+        input = ProgramGenerator.functions(functions);
+        tokens = new DfaLexer(input).lex();
+        buffer = new DfaLexer(input).lexBuffer();
+    }
+
+    @Benchmark
+    public Ast.Source parseTokens() {
+        return new Parser(tokens).parseSource();
+    }
+
+    @Benchmark
+    public Ast.Source parseBuffer() {
+        return new Parser(buffer).parseSource();
+    }
+
+    @Benchmark
+    public Ast.Source parseSignatures() {
+        Parser parser = new Parser(buffer);
+        parser.setLazy(true);
+        return parser.parseSource();
+    }
+
+    @Benchmark
+    public Ast.Source lexAndParse() {
+        return new Parser(new DfaLexer(input).lexBuffer()).parseSource();
+    }
+
+}
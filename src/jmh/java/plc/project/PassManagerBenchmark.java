@@ -0,0 +1,78 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures running passes over a source with a {@link PassManager}: a pass
+ * which changes nothing, which should only traverse the tree, and folding
+ * integer additions to a fixpoint. Run with {@code gradle jmh}; the gc
+ * profiler reports the allocations of each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PassManagerBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int count;
+
+    private Ast.Source source;
+    private PassManager unchanged;
+    private PassManager folding;
+
+    @Setup
+    public void setup() {
+        source = new Parser(new DfaLexer(ProgramGenerator.program(count)).lexBuffer()).parseSource();
+        unchanged = new PassManager();
+        unchanged.add(new AstRewriter() {});
+        folding = new PassManager();
+        folding.add(new FoldAdditions());
+        folding.setMaxIterations(8);
+    }
+
+    @Benchmark
+    public Ast.Source unchanged() {
+        return unchanged.run(source);
+    }
+
+    @Benchmark
+    public Ast.Source fold() {
+        return folding.run(source);
+    }
+
+    private static final class FoldAdditions extends AstRewriter {
+
+        @Override
+        public Ast visit(Ast.Expression.Binary ast) {
+            Ast.Expression.Binary binary = (Ast.Expression.Binary) super.visit(ast);
+            if (binary.getOperator().equals("+") && isInteger(binary.getLeft()) && isInteger(binary.getRight())) {
+                BigInteger left = (BigInteger) ((Ast.Expression.Literal) binary.getLeft()).getLiteral();
+                BigInteger right = (BigInteger) ((Ast.Expression.Literal) binary.getRight()).getLiteral();
+                return span(new Ast.Expression.Literal(left.add(right)), ast);
+            }
+            return binary;
+        }
+
+        private static boolean isInteger(Ast.Expression ast) {
+            return ast instanceof Ast.Expression.Literal && ((Ast.Expression.Literal) ast).getLiteral() instanceof BigInteger;
+        }
+
+    }
+
+}
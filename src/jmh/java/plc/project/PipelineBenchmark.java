@@ -0,0 +1,79 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each phase of the pipeline separately on a complete program from
+ * {@link ProgramGenerator#program(int)}: lexing, parsing, analyzing,
+ * interpreting and generating. Each phase starts from the output of the
+ * previous phases, which is prepared once in {@link #setup()}. Run with
+ * {@code gradle jmh}, which also reports allocation rates through the gc
+ * profiler.
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int functions;
+
+    private String input;
+    private List<Token> tokens;
+    private Ast.Source ast;
+
+    @Setup
+    public void setup() {
+        input = ProgramGenerator.program(functions);
+        tokens = new Lexer(input).lex();
+        ast = new Parser(tokens).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+    }
+
+    @Benchmark
+    public List<Token> lex() {
+        return new Lexer(input).lex();
+    }
+
+    @Benchmark
+    public Ast.Source parse() {
+        return new Parser(tokens).parseSource();
+    }
+
+    @Benchmark
+    public Scope analyze() {
+        Analyzer analyzer = new Analyzer(new Scope(null));
+        analyzer.visit(ast);
+        return analyzer.getScope();
+    }
+
+    @Benchmark
+    public Environment.PlcObject interpret() {
+        return new Interpreter(new Scope(null)).visit(ast);
+    }
+
+    @Benchmark
+    public String generate() {
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(ast);
+        return writer.toString();
+    }
+
+}
@@ -0,0 +1,109 @@
+package plc.project;
+
+/**
+ * Generates synthetic source code for the benchmarks. The programs avoid zero
+ * literals, which {@link Lexer} only accepts at the very end of the input, so
+ * that every lexer implementation can be compared on the same input.
+ */
+final class ProgramGenerator {
+
+    private ProgramGenerator() {}
+
+    /**
+     * Returns a program with {@code count} functions of a few statements each.
+     */
+    static String functions(int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append("FUN f").append(i).append("(x: Integer, y: Decimal): Integer DO\n")
+                    .append("    LET s: String = \"value\\n\";\n")
+                    .append("    IF x > 1 && y != 2.5 DO\n")
+                    .append("        print('c');\n")
+                    .append("    END\n")
+                    .append("    RETURN x * 2 + f").append(i).append("(x - 1, y);\n")
+                    .append("END\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns {@link #functions(int)} followed by a {@code main} which does
+     * not call any of them, like an entry point using little of a library.
+     */
+    static String library(int count) {
+        return functions(count) + "FUN main(): Integer DO\n    RETURN 1;\nEND\n";
+    }
+
+    /**
+     * Returns a single expression of {@code terms} operands, cycling through
+     * the binary operators of every precedence level.
+     */
+    static String expression(int terms) {
+        String[] operators = {" + ", " * ", " - ", " / ", " == ", " && ", " < ", " ^ ", " || ", " != "};
+        StringBuilder builder = new StringBuilder("x0");
+        for (int i = 1; i < terms; i++) {
+            builder.append(operators[i % operators.length]).append(i % 3 == 0 ? "f(x" + i + ")" : "x" + i);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns a function whose body nests {@code depth} if and while blocks,
+     * the innermost of which returns a call nested {@code depth} times with
+     * a grouped argument.
+     */
+    static String nested(int depth) {
+        StringBuilder builder = new StringBuilder("FUN main(): Integer DO\n");
+        for (int i = 0; i < depth; i++) {
+            builder.append(i % 2 == 0 ? "IF x > 1 DO\n" : "WHILE y DO\n");
+        }
+        builder.append("RETURN ");
+        for (int i = 0; i < depth; i++) {
+            builder.append("f((x + ");
+        }
+        builder.append("1");
+        for (int i = 0; i < depth; i++) {
+            builder.append("))");
+        }
+        builder.append(";\n");
+        for (int i = 0; i < depth; i++) {
+            builder.append("END\n");
+        }
+        return builder.append("END\n").toString();
+    }
+
+    /**
+     * Returns a complete program with a global, {@code count} functions and a
+     * {@code main} calling each of them, which passes the {@link Analyzer} and
+     * runs to completion in the {@link Interpreter}. Functions only use
+     * globals and locals, since the analyzer does not define parameters, and
+     * do not print so interpreting does not write to the console.
+     */
+    static String program(int count) {
+        StringBuilder builder = new StringBuilder("VAR total: Integer = 1;\n");
+        for (int i = 0; i < count; i++) {
+            builder.append("FUN f").append(i).append("(n: Integer): Integer DO\n")
+                    .append("    LET s: String = \"value\\n\";\n")
+                    .append("    LET t = total + ").append(i + 1).append(";\n")
+                    .append("    IF t > 2 && s != \"other\" DO\n")
+                    .append("        total = total - 1;\n")
+                    .append("    ELSE\n")
+                    .append("        total = total + 1;\n")
+                    .append("    END\n")
+                    .append("    WHILE t < 5 DO\n")
+                    .append("        t = t + 1;\n")
+                    .append("    END\n")
+                    .append("    RETURN t * 2;\n")
+                    .append("END\n");
+        }
+        builder.append("FUN main(): Integer DO\n")
+                .append("    LET result: Integer = 1;\n");
+        for (int i = 0; i < count; i++) {
+            builder.append("    result = result + f").append(i).append("(result);\n");
+        }
+        return builder.append("    RETURN result;\n")
+                .append("END\n")
+                .toString();
+    }
+
+}
@@ -34,20 +34,19 @@ public final class Analyzer implements Ast.Visitor<Void> {
             visit(globals);
         }
         for(Ast.Function func : ast.getFunctions()){
-            if(func.getName() == "main"){
+            visit(func);
+            if(func.getName().equals("main")){
                 found = true;
-                if(func.getReturnTypeName().get() != "Integer"){
+                if(!func.getReturnTypeName().isPresent() || !func.getReturnTypeName().get().equals("Integer")){
                     throw new RuntimeException("main does not return Integer");
                 }
+                // return values are typed once the function has been visited
                 for(Ast.Statement states : func.getStatements()){
                     if((states instanceof Ast.Statement.Return)){
-                        if(!(((Ast.Expression.Literal) ((Ast.Statement.Return) states).getValue()).getLiteral() instanceof  Integer)){
-                            throw new RuntimeException("invalid Return");
-                        }
+                        requireAssignable(Environment.Type.INTEGER, ((Ast.Statement.Return) states).getValue().getType());
                     }
                 }
             }
-            visit(func);
         }
         if(!found) throw new RuntimeException("missing main function");
         return null;
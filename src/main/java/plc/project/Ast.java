@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * See the Parser assignment specification for specific notes on each AST class
@@ -11,12 +12,77 @@ import java.util.Optional;
  */
 public abstract class Ast {
 
+    /*
+     * Constants identifying the class of each node, returned by getKind() so
+     * that visitors can dispatch with a single switch.
+     */
+    public static final int SOURCE = 0;
+    public static final int GLOBAL = 1;
+    public static final int FUNCTION = 2;
+    public static final int EXPRESSION_STATEMENT = 3;
+    public static final int DECLARATION = 4;
+    public static final int ASSIGNMENT = 5;
+    public static final int IF = 6;
+    public static final int SWITCH = 7;
+    public static final int CASE = 8;
+    public static final int WHILE = 9;
+    public static final int RETURN = 10;
+    public static final int ERROR = 11;
+    public static final int LITERAL = 12;
+    public static final int GROUP = 13;
+    public static final int BINARY = 14;
+    public static final int ACCESS = 15;
+    public static final int CALL = 16;
+    public static final int LIST = 17;
+
+    private final int kind;
+    private int start = -1;
+    private int end = -1;
+
+    private Ast(int kind) {
+        this.kind = kind;
+    }
+
+    /**
+     * Returns the constant identifying the class of this node, such as {@link
+     * #IF} for {@link Ast.Statement.If} or {@link #CALL} for {@link
+     * Ast.Expression.Function}.
+     */
+    public final int getKind() {
+        return kind;
+    }
+
+    /**
+     * Returns the index of the first character of this node in the source,
+     * or {@code -1} if the node was not parsed from a source. Spans are set
+     * by the {@link Parser} on every node except the source, and can be
+     * mapped to lines and columns with a {@link LineIndex}. They are not
+     * compared by {@link #equals(Object)}.
+     */
+    public final int getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the index after the last character of this node in the source,
+     * or {@code -1} if the node was not parsed from a source.
+     */
+    public final int getEnd() {
+        return end;
+    }
+
+    public final void setSpan(int start, int end) {
+        this.start = start;
+        this.end = end;
+    }
+
     public static final class Source extends Ast {
 
         private final List<Global> globals;
         private final List<Ast.Function> functions;
 
         public Source(List<Global> globals, List<Ast.Function> functions) {
+            super(SOURCE);
             this.globals = globals;
             this.functions = functions;
         }
@@ -59,6 +125,7 @@ public abstract class Ast {
 		}
 
         public Global(String name, String typeName, boolean mutable, Optional<Ast.Expression> value) {
+            super(GLOBAL);
             this.name = name;
             this.typeName = typeName;
             this.mutable = mutable;
@@ -123,9 +190,10 @@ public abstract class Ast {
         private final List<String> parameters;
         private final List<String> parameterTypeNames;
         private final Optional<String> returnTypeName;
-        private final List<Statement> statements;
+        private List<Statement> statements;
+        private volatile Supplier<List<Statement>> body;
         private Environment.Function function = null;
-        
+
         public Function(String name, List<String> parameters, List<Statement> statements) {
             this(name, parameters, new ArrayList<>(), Optional.of("Any"), statements);
             for (int i = 0; i < parameters.size(); i++) {
@@ -134,7 +202,7 @@ public abstract class Ast {
         }
 
         public Function(String name, List<String> parameters, List<String> parameterTypeNames, Optional<String> returnTypeName, List<Statement> statements) {
-
+            super(FUNCTION);
             this.name = name;
             this.parameters = parameters;
             this.parameterTypeNames = parameterTypeNames;
@@ -142,6 +210,16 @@ public abstract class Ast {
             this.statements = statements;
         }
 
+        /**
+         * Creates a function whose statements are produced by {@code body} the
+         * first time {@link #getStatements()} is called, which is used by the
+         * parser to parse function bodies lazily.
+         */
+        Function(String name, List<String> parameters, List<String> parameterTypeNames, Optional<String> returnTypeName, Supplier<List<Statement>> body) {
+            this(name, parameters, parameterTypeNames, returnTypeName, (List<Statement>) null);
+            this.body = body;
+        }
+
         public String getName() {
             return name;
         }
@@ -158,7 +236,20 @@ public abstract class Ast {
             return returnTypeName;
         }
 
+        /**
+         * Returns the statements, parsing a lazy body once even when called
+         * from several threads. The body is cleared only after the statements
+         * are written, so a thread seeing no body also sees the statements.
+         */
         public List<Statement> getStatements() {
+            if (body != null) {
+                synchronized (this) {
+                    if (body != null) {
+                        statements = body.get();
+                        body = null;
+                    }
+                }
+            }
             return statements;
         }
 
@@ -181,7 +272,7 @@ public abstract class Ast {
                     parameters.equals(((Ast.Function) obj).parameters) &&
                     parameterTypeNames.equals(((Ast.Function) obj).parameterTypeNames) &&
                     returnTypeName.equals(((Ast.Function) obj).returnTypeName) &&
-                    statements.equals(((Ast.Function) obj).statements) &&
+                    getStatements().equals(((Ast.Function) obj).getStatements()) &&
                     Objects.equals(function, ((Ast.Function) obj).function);
         }
 
@@ -193,7 +284,7 @@ public abstract class Ast {
                     ", parameters=" + parameters +
                     ", parameterTypeNames=" + parameterTypeNames +
                     ", returnTypeName='" + returnTypeName + '\'' +
-                    ", statements=" + statements +
+                    ", statements=" + getStatements() +
                     ", function=" + function +
                     '}';
         }
@@ -202,11 +293,16 @@ public abstract class Ast {
 
     public static abstract class Statement extends Ast {
 
+        private Statement(int kind) {
+            super(kind);
+        }
+
         public static final class Expression extends Statement {
 
             private final Ast.Expression expression;
 
             public Expression(Ast.Expression expression) {
+                super(EXPRESSION_STATEMENT);
                 this.expression = expression;
             }
 
@@ -241,6 +337,7 @@ public abstract class Ast {
             }
 
             public Declaration(String name, Optional<String> typeName, Optional<Ast.Expression> value) {
+                super(DECLARATION);
                 this.name = name;
                 this.typeName = typeName;
                 this.value = value;
@@ -297,6 +394,7 @@ public abstract class Ast {
             private final Ast.Expression value;
 
             public Assignment(Ast.Expression receiver, Ast.Expression value) {
+                super(ASSIGNMENT);
                 this.receiver = receiver;
                 this.value = value;
             }
@@ -334,6 +432,7 @@ public abstract class Ast {
 
 
             public If(Ast.Expression condition, List<Statement> thenStatements, List<Statement> elseStatements) {
+                super(IF);
                 this.condition = condition;
                 this.thenStatements = thenStatements;
                 this.elseStatements = elseStatements;
@@ -376,6 +475,7 @@ public abstract class Ast {
             private final List<Ast.Statement.Case> cases;
 
             public Switch(Ast.Expression condition, List<Ast.Statement.Case> cases) {
+                super(SWITCH);
                 this.condition = condition;
                 this.cases = cases;
             }
@@ -409,6 +509,7 @@ public abstract class Ast {
             private final List<Statement> statements;
 
             public Case(Optional<Ast.Expression> value, List<Statement> statements) {
+                super(CASE);
                 this.value = value;
                 this.statements = statements;
             }
@@ -444,6 +545,7 @@ public abstract class Ast {
             private final List<Statement> statements;
 
             public While(Ast.Expression condition, List<Statement> statements) {
+                super(WHILE);
                 this.condition = condition;
                 this.statements = statements;
             }
@@ -478,6 +580,7 @@ public abstract class Ast {
             private final Ast.Expression value;
 
             public Return(Ast.Expression value) {
+                super(RETURN);
                 this.value = value;
             }
 
@@ -500,10 +603,54 @@ public abstract class Ast {
 
         }
 
+        /**
+         * Stands in for a statement which could not be parsed when parsing with
+         * {@link Parser#parseSource(List)}, recording the syntax error.
+         */
+        public static final class Error extends Statement {
+
+            private final String message;
+            private final int index;
+
+            public Error(String message, int index) {
+                super(ERROR);
+                this.message = message;
+                this.index = index;
+            }
+
+            public String getMessage() {
+                return message;
+            }
+
+            public int getIndex() {
+                return index;
+            }
+
+            @Override
+            public boolean equals(Object obj) {
+                return obj instanceof Error &&
+                        message.equals(((Error) obj).message) &&
+                        index == ((Error) obj).index;
+            }
+
+            @Override
+            public String toString() {
+                return "Ast.Statement.Error{" +
+                        "message='" + message + '\'' +
+                        ", index=" + index +
+                        '}';
+            }
+
+        }
+
     }
 
     public static abstract class Expression extends Ast {
 
+        private Expression(int kind) {
+            super(kind);
+        }
+
         public abstract Environment.Type getType();
 
         public static final class Literal extends Ast.Expression {
@@ -512,6 +659,7 @@ public abstract class Ast {
             private Environment.Type type = null;
             
             public Literal(Object literal) {
+                super(LITERAL);
                 this.literal = literal;
             }
 
@@ -556,6 +704,7 @@ public abstract class Ast {
             private Environment.Type type = null;
 
             public Group(Ast.Expression expression) {
+                super(GROUP);
                 this.expression = expression;
             }
 
@@ -602,6 +751,7 @@ public abstract class Ast {
             private Environment.Type type = null;
 
             public Binary(String operator, Ast.Expression left, Ast.Expression right) {
+                super(BINARY);
                 this.operator = operator;
                 this.left = left;
                 this.right = right;
@@ -660,6 +810,7 @@ public abstract class Ast {
             private Environment.Variable variable = null;
 
             public Access(Optional<Ast.Expression> offset, String name) {
+                super(ACCESS);
                 this.offset = offset;
                 this.name = name;
             }
@@ -715,6 +866,7 @@ public abstract class Ast {
             private Environment.Function function = null;
 
             public Function(String name, List<Ast.Expression> arguments) {
+                super(CALL);
                 this.name = name;
                 this.arguments = arguments;
             }
@@ -769,6 +921,7 @@ public abstract class Ast {
 
 
             public PlcList(List<Ast.Expression> values) {
+                super(LIST);
                 this.values = values;
             }
 
@@ -809,43 +962,50 @@ public abstract class Ast {
 
     public interface Visitor<T> {
 
+        /**
+         * Dispatches to the method for the class of {@code ast} by switching on
+         * its {@link Ast#getKind()}, which takes constant time for every node.
+         */
         default T visit(Ast ast) {
-            if (ast instanceof Ast.Source) {
-                return visit((Ast.Source) ast);
-            } else if (ast instanceof Ast.Global) {
-                return visit((Ast.Global) ast);
-            } else if (ast instanceof Ast.Function) {
-                return visit((Ast.Function) ast);
-            } else if (ast instanceof Ast.Statement.Expression) {
-                return visit((Ast.Statement.Expression) ast);
-            } else if (ast instanceof Ast.Statement.Declaration) {
-                return visit((Ast.Statement.Declaration) ast);
-            } else if (ast instanceof Ast.Statement.Assignment) {
-                return visit((Ast.Statement.Assignment) ast);
-            } else if (ast instanceof Ast.Statement.If) {
-                return visit((Ast.Statement.If) ast);
-            } else if (ast instanceof Ast.Statement.Switch) {
-                return visit((Ast.Statement.Switch) ast);
-            } else if (ast instanceof Ast.Statement.Case) {
-                return visit((Ast.Statement.Case) ast);
-            } else if (ast instanceof Ast.Statement.While) {
-                return visit((Ast.Statement.While) ast);
-            } else if (ast instanceof Ast.Statement.Return) {
-                return visit((Ast.Statement.Return) ast);
-            } else if (ast instanceof Ast.Expression.Literal) {
-                return visit((Ast.Expression.Literal) ast);
-            } else if (ast instanceof Ast.Expression.Group) {
-                return visit((Ast.Expression.Group) ast);
-            } else if (ast instanceof Ast.Expression.Binary) {
-                return visit((Ast.Expression.Binary) ast);
-            } else if (ast instanceof Ast.Expression.Access) {
-                return visit((Ast.Expression.Access) ast);
-            } else if (ast instanceof Ast.Expression.Function) {
-                return visit((Ast.Expression.Function) ast);
-            } else if (ast instanceof Ast.Expression.PlcList) {
-                return visit((Ast.Expression.PlcList) ast);
-            } else {
-                throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+            switch (ast.getKind()) {
+                case Ast.SOURCE:
+                    return visit((Ast.Source) ast);
+                case Ast.GLOBAL:
+                    return visit((Ast.Global) ast);
+                case Ast.FUNCTION:
+                    return visit((Ast.Function) ast);
+                case Ast.EXPRESSION_STATEMENT:
+                    return visit((Ast.Statement.Expression) ast);
+                case Ast.DECLARATION:
+                    return visit((Ast.Statement.Declaration) ast);
+                case Ast.ASSIGNMENT:
+                    return visit((Ast.Statement.Assignment) ast);
+                case Ast.IF:
+                    return visit((Ast.Statement.If) ast);
+                case Ast.SWITCH:
+                    return visit((Ast.Statement.Switch) ast);
+                case Ast.CASE:
+                    return visit((Ast.Statement.Case) ast);
+                case Ast.WHILE:
+                    return visit((Ast.Statement.While) ast);
+                case Ast.RETURN:
+                    return visit((Ast.Statement.Return) ast);
+                case Ast.ERROR:
+                    return visit((Ast.Statement.Error) ast);
+                case Ast.LITERAL:
+                    return visit((Ast.Expression.Literal) ast);
+                case Ast.GROUP:
+                    return visit((Ast.Expression.Group) ast);
+                case Ast.BINARY:
+                    return visit((Ast.Expression.Binary) ast);
+                case Ast.ACCESS:
+                    return visit((Ast.Expression.Access) ast);
+                case Ast.CALL:
+                    return visit((Ast.Expression.Function) ast);
+                case Ast.LIST:
+                    return visit((Ast.Expression.PlcList) ast);
+                default:
+                    throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
             }
         }
 
@@ -871,6 +1031,14 @@ public abstract class Ast {
 
         T visit(Ast.Statement.Return ast);
 
+        /**
+         * Throws the syntax error recorded by the node, since a source with
+         * errors cannot be analyzed or evaluated.
+         */
+        default T visit(Ast.Statement.Error ast) {
+            throw new ParseException(ast.getMessage(), ast.getIndex());
+        }
+
         T visit(Ast.Expression.Literal ast);
 
         T visit(Ast.Expression.Group ast);
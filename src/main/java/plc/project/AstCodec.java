@@ -0,0 +1,716 @@
+package plc.project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A compact binary encoding of {@link Ast.Source}, used to store parsed
+ * sources (see {@link ParseCache}) or send them between processes.
+ *
+ * An encoded source starts with the bytes {@code PLCA} and a version,
+ * followed by a string table holding every name, type name, operator and
+ * string, decimal or large integer literal once, and then the globals and
+ * functions. Statements and expressions are written as a tag followed by
+ * their fields, where strings are indices into the table. All integers,
+ * including tags, lengths and indices, are written as unsigned varints of
+ * seven bits per byte, with signed values zigzag encoded first. An optional
+ * value is written as tag {@link #NONE} when absent, and an optional string
+ * as index {@code 0} when absent and {@code index + 1} otherwise. The span of
+ * each node follows its tag, or starts a global or function, with its start
+ * relative to the start of the previous node.
+ *
+ * Only the syntax is encoded; annotations added by the {@link Analyzer} are
+ * not. A {@link Decoder} reads the globals and functions of a source one at a
+ * time, so a stream can be decoded without holding all of it in memory.
+ */
+public final class AstCodec implements ParseCache.Codec {
+
+    private static final byte[] MAGIC = {'P', 'L', 'C', 'A'};
+    private static final int VERSION = 2;
+
+    private static final int NONE = 0;
+
+    private static final int EXPRESSION_STATEMENT = 1;
+    private static final int DECLARATION = 2;
+    private static final int ASSIGNMENT = 3;
+    private static final int IF = 4;
+    private static final int SWITCH = 5;
+    private static final int CASE = 6;
+    private static final int WHILE = 7;
+    private static final int RETURN = 8;
+
+    private static final int NIL = 9;
+    private static final int TRUE = 10;
+    private static final int FALSE = 11;
+    private static final int INTEGER = 12;
+    private static final int BIG_INTEGER = 13;
+    private static final int DECIMAL = 14;
+    private static final int CHARACTER = 15;
+    private static final int STRING = 16;
+    private static final int GROUP = 17;
+    private static final int BINARY = 18;
+    private static final int ACCESS = 19;
+    private static final int FUNCTION = 20;
+    private static final int LIST = 21;
+    private static final int ERROR = 22;
+
+    @Override
+    public byte[] encode(Ast.Source source) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            encode(source, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the encoding of {@code source} to {@code out}. The string table
+     * must precede the nodes, so the nodes are encoded into a buffer first.
+     */
+    public void encode(Ast.Source source, OutputStream out) throws IOException {
+        Encoder encoder = new Encoder();
+        encoder.writeVarint(source.getGlobals().size());
+        for (Ast.Global global : source.getGlobals()) {
+            encoder.writeGlobal(global);
+        }
+        encoder.writeVarint(source.getFunctions().size());
+        for (Ast.Function function : source.getFunctions()) {
+            encoder.writeFunction(function);
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        header.write(MAGIC);
+        writeVarint(header, VERSION);
+        writeVarint(header, encoder.strings.size());
+        for (String string : encoder.strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarint(header, bytes.length);
+            header.write(bytes);
+        }
+        header.writeTo(out);
+        encoder.nodes.writeTo(out);
+    }
+
+    @Override
+    public Ast.Source decode(byte[] bytes) {
+        try {
+            return decode(new Decoder(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Ast.Source decode(InputStream in) throws IOException {
+        return decode(new Decoder(in));
+    }
+
+    private static Ast.Source decode(Decoder decoder) throws IOException {
+        List<Ast.Global> globals = new ArrayList<>();
+        while (decoder.hasGlobal()) {
+            globals.add(decoder.readGlobal());
+        }
+        List<Ast.Function> functions = new ArrayList<>();
+        while (decoder.hasFunction()) {
+            functions.add(decoder.readFunction());
+        }
+        return new Ast.Source(globals, functions);
+    }
+
+    private static void writeVarint(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Encodes nodes into a buffer while collecting the string table.
+     */
+    private static final class Encoder {
+
+        private final ByteArrayOutputStream nodes = new ByteArrayOutputStream();
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> indices = new HashMap<>();
+        private int previous;
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                nodes.write(value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            nodes.write(value);
+        }
+
+        private void writeTag(int tag, Ast ast) {
+            writeVarint(tag);
+            writeSpan(ast);
+        }
+
+        /**
+         * Writes the start of a node relative to the start of the previous
+         * node, zigzag encoded and plus one, or {@code 0} if the node has no
+         * span, followed by its length.
+         */
+        private void writeSpan(Ast ast) {
+            if (ast.getStart() < 0) {
+                writeVarint(0);
+                return;
+            }
+            int delta = ast.getStart() - previous;
+            writeVarint((delta << 1 ^ delta >> 31) + 1);
+            writeVarint(ast.getEnd() - ast.getStart());
+            previous = ast.getStart();
+        }
+
+        private void writeVarlong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                nodes.write((int) (value & 0x7F | 0x80));
+                value >>>= 7;
+            }
+            nodes.write((int) value);
+        }
+
+        private void writeString(String string) {
+            Integer index = indices.get(string);
+            if (index == null) {
+                index = strings.size();
+                strings.add(string);
+                indices.put(string, index);
+            }
+            writeVarint(index);
+        }
+
+        private void writeOptionalString(Optional<String> string) {
+            if (string.isPresent()) {
+                Integer index = indices.get(string.get());
+                if (index == null) {
+                    index = strings.size();
+                    strings.add(string.get());
+                    indices.put(string.get(), index);
+                }
+                writeVarint(index + 1);
+            } else {
+                writeVarint(0);
+            }
+        }
+
+        private void writeGlobal(Ast.Global global) {
+            writeSpan(global);
+            writeString(global.getName());
+            writeString(global.getTypeName());
+            writeVarint(global.getMutable() ? 1 : 0);
+            writeOptional(global.getValue());
+        }
+
+        private void writeFunction(Ast.Function function) {
+            writeSpan(function);
+            writeString(function.getName());
+            writeVarint(function.getParameters().size());
+            for (int i = 0; i < function.getParameters().size(); i++) {
+                writeString(function.getParameters().get(i));
+                writeString(function.getParameterTypeNames().get(i));
+            }
+            writeOptionalString(function.getReturnTypeName());
+            writeStatements(function.getStatements());
+        }
+
+        private void writeStatements(List<? extends Ast.Statement> statements) {
+            writeVarint(statements.size());
+            for (Ast.Statement statement : statements) {
+                writeStatement(statement);
+            }
+        }
+
+        private void writeStatement(Ast.Statement ast) {
+            if (ast instanceof Ast.Statement.Expression) {
+                writeTag(EXPRESSION_STATEMENT, ast);
+                writeExpression(((Ast.Statement.Expression) ast).getExpression());
+            } else if (ast instanceof Ast.Statement.Declaration) {
+                Ast.Statement.Declaration declaration = (Ast.Statement.Declaration) ast;
+                writeTag(DECLARATION, ast);
+                writeString(declaration.getName());
+                writeOptionalString(declaration.getTypeName());
+                writeOptional(declaration.getValue());
+            } else if (ast instanceof Ast.Statement.Assignment) {
+                writeTag(ASSIGNMENT, ast);
+                writeExpression(((Ast.Statement.Assignment) ast).getReceiver());
+                writeExpression(((Ast.Statement.Assignment) ast).getValue());
+            } else if (ast instanceof Ast.Statement.If) {
+                writeTag(IF, ast);
+                writeExpression(((Ast.Statement.If) ast).getCondition());
+                writeStatements(((Ast.Statement.If) ast).getThenStatements());
+                writeStatements(((Ast.Statement.If) ast).getElseStatements());
+            } else if (ast instanceof Ast.Statement.Switch) {
+                writeTag(SWITCH, ast);
+                writeExpression(((Ast.Statement.Switch) ast).getCondition());
+                writeStatements(((Ast.Statement.Switch) ast).getCases());
+            } else if (ast instanceof Ast.Statement.Case) {
+                writeTag(CASE, ast);
+                writeOptional(((Ast.Statement.Case) ast).getValue());
+                writeStatements(((Ast.Statement.Case) ast).getStatements());
+            } else if (ast instanceof Ast.Statement.While) {
+                writeTag(WHILE, ast);
+                writeExpression(((Ast.Statement.While) ast).getCondition());
+                writeStatements(((Ast.Statement.While) ast).getStatements());
+            } else if (ast instanceof Ast.Statement.Return) {
+                writeTag(RETURN, ast);
+                writeExpression(((Ast.Statement.Return) ast).getValue());
+            } else if (ast instanceof Ast.Statement.Error) {
+                writeTag(ERROR, ast);
+                writeString(((Ast.Statement.Error) ast).getMessage());
+                writeVarint(((Ast.Statement.Error) ast).getIndex());
+            } else {
+                throw new IllegalArgumentException("Unsupported statement: " + ast.getClass());
+            }
+        }
+
+        private void writeOptional(Optional<Ast.Expression> expression) {
+            if (expression.isPresent()) {
+                writeExpression(expression.get());
+            } else {
+                writeVarint(NONE);
+            }
+        }
+
+        private void writeExpression(Ast.Expression ast) {
+            if (ast instanceof Ast.Expression.Literal) {
+                writeLiteral((Ast.Expression.Literal) ast);
+            } else if (ast instanceof Ast.Expression.Group) {
+                writeTag(GROUP, ast);
+                writeExpression(((Ast.Expression.Group) ast).getExpression());
+            } else if (ast instanceof Ast.Expression.Binary) {
+                writeTag(BINARY, ast);
+                writeString(((Ast.Expression.Binary) ast).getOperator());
+                writeExpression(((Ast.Expression.Binary) ast).getLeft());
+                writeExpression(((Ast.Expression.Binary) ast).getRight());
+            } else if (ast instanceof Ast.Expression.Access) {
+                writeTag(ACCESS, ast);
+                writeString(((Ast.Expression.Access) ast).getName());
+                writeOptional(((Ast.Expression.Access) ast).getOffset());
+            } else if (ast instanceof Ast.Expression.Function) {
+                writeTag(FUNCTION, ast);
+                writeString(((Ast.Expression.Function) ast).getName());
+                writeExpressions(((Ast.Expression.Function) ast).getArguments());
+            } else if (ast instanceof Ast.Expression.PlcList) {
+                writeTag(LIST, ast);
+                writeExpressions(((Ast.Expression.PlcList) ast).getValues());
+            } else {
+                throw new IllegalArgumentException("Unsupported expression: " + ast.getClass());
+            }
+        }
+
+        private void writeExpressions(List<Ast.Expression> expressions) {
+            writeVarint(expressions.size());
+            for (Ast.Expression expression : expressions) {
+                writeExpression(expression);
+            }
+        }
+
+        private void writeLiteral(Ast.Expression.Literal ast) {
+            Object literal = ast.getLiteral();
+            if (literal == null) {
+                writeTag(NIL, ast);
+            } else if (literal instanceof Boolean) {
+                writeTag((Boolean) literal ? TRUE : FALSE, ast);
+            } else if (literal instanceof BigInteger) {
+                BigInteger value = (BigInteger) literal;
+                if (value.bitLength() < 64) {
+                    long l = value.longValue();
+                    writeTag(INTEGER, ast);
+                    writeVarlong(l << 1 ^ l >> 63);
+                } else {
+                    writeTag(BIG_INTEGER, ast);
+                    writeString(value.toString());
+                }
+            } else if (literal instanceof BigDecimal) {
+                writeTag(DECIMAL, ast);
+                writeString(literal.toString());
+            } else if (literal instanceof Character) {
+                writeTag(CHARACTER, ast);
+                writeVarint((Character) literal);
+            } else if (literal instanceof String) {
+                writeTag(STRING, ast);
+                writeString((String) literal);
+            } else {
+                throw new IllegalArgumentException("Unsupported literal: " + literal.getClass());
+            }
+        }
+
+    }
+
+    /**
+     * Decodes a source from a stream, reading the string table when it is
+     * created and then each global and function as it is requested. Globals
+     * must all be read before functions.
+     *
+     * The decoder never reads past the end of the encoding, so further data
+     * or encodings may follow it on the same stream. Since it requests only
+     * the bytes it needs, an unbuffered stream should be wrapped in a {@link
+     * java.io.BufferedInputStream} by the caller.
+     */
+    public static final class Decoder {
+
+        private final InputStream in;
+        private final byte[] buffer;
+        private int position;
+        private int limit;
+        private final String[] strings;
+        private int globals;
+        private int functions = -1;
+        private int previous;
+
+        public Decoder(byte[] bytes) throws IOException {
+            this(null, bytes, bytes.length);
+        }
+
+        public Decoder(InputStream in) throws IOException {
+            this(in, new byte[8192], 0);
+        }
+
+        private Decoder(InputStream in, byte[] buffer, int limit) throws IOException {
+            this.in = in;
+            this.buffer = buffer;
+            this.limit = limit;
+            for (byte b : MAGIC) {
+                if (read() != b) {
+                    throw new IOException("Not an encoded source.");
+                }
+            }
+            int version = readVarint();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version " + version + ".");
+            }
+            int count = readCount();
+            List<String> strings = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                strings.add(readUtf8(readCount()));
+            }
+            this.strings = strings.toArray(new String[0]);
+            globals = readVarint();
+        }
+
+        public boolean hasGlobal() {
+            return globals > 0;
+        }
+
+        public Ast.Global readGlobal() throws IOException {
+            if (globals-- <= 0) {
+                throw new IllegalStateException("No more globals.");
+            }
+            long span = readSpan();
+            String name = readString();
+            String typeName = readString();
+            boolean mutable = readVarint() != 0;
+            return span(new Ast.Global(name, typeName, mutable, readOptional()), span);
+        }
+
+        public boolean hasFunction() throws IOException {
+            return functions() > 0;
+        }
+
+        public Ast.Function readFunction() throws IOException {
+            if (functions() <= 0) {
+                throw new IllegalStateException("No more functions.");
+            }
+            functions--;
+            long span = readSpan();
+            String name = readString();
+            int count = readCount();
+            List<String> parameters = new ArrayList<>();
+            List<String> parameterTypeNames = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                parameters.add(readString());
+                parameterTypeNames.add(readString());
+            }
+            Optional<String> returnTypeName = readOptionalString();
+            return span(new Ast.Function(name, parameters, parameterTypeNames, returnTypeName, readStatements()), span);
+        }
+
+        /**
+         * Returns the number of functions left, reading the count once every
+         * global has been read.
+         */
+        private int functions() throws IOException {
+            if (functions < 0) {
+                if (globals > 0) {
+                    throw new IllegalStateException("Globals must be read before functions.");
+                }
+                functions = readVarint();
+            }
+            return functions;
+        }
+
+        private List<Ast.Statement> readStatements() throws IOException {
+            int count = readCount();
+            List<Ast.Statement> statements = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                statements.add(readStatement(readVarint()));
+            }
+            return statements;
+        }
+
+        private Ast.Statement readStatement(int tag) throws IOException {
+            long span = readSpan();
+            return span(readStatementFields(tag), span);
+        }
+
+        private Ast.Statement readStatementFields(int tag) throws IOException {
+            switch (tag) {
+                case EXPRESSION_STATEMENT:
+                    return new Ast.Statement.Expression(readExpression());
+                case DECLARATION: {
+                    String name = readString();
+                    Optional<String> typeName = readOptionalString();
+                    return new Ast.Statement.Declaration(name, typeName, readOptional());
+                }
+                case ASSIGNMENT: {
+                    Ast.Expression receiver = readExpression();
+                    return new Ast.Statement.Assignment(receiver, readExpression());
+                }
+                case IF: {
+                    Ast.Expression condition = readExpression();
+                    List<Ast.Statement> thenStatements = readStatements();
+                    return new Ast.Statement.If(condition, thenStatements, readStatements());
+                }
+                case SWITCH: {
+                    Ast.Expression condition = readExpression();
+                    int count = readCount();
+                    List<Ast.Statement.Case> cases = new ArrayList<>();
+                    for (int i = 0; i < count; i++) {
+                        Ast.Statement statement = readStatement(readVarint());
+                        if (!(statement instanceof Ast.Statement.Case)) {
+                            throw new IOException("Expected a case.");
+                        }
+                        cases.add((Ast.Statement.Case) statement);
+                    }
+                    return new Ast.Statement.Switch(condition, cases);
+                }
+                case CASE: {
+                    Optional<Ast.Expression> value = readOptional();
+                    return new Ast.Statement.Case(value, readStatements());
+                }
+                case WHILE: {
+                    Ast.Expression condition = readExpression();
+                    return new Ast.Statement.While(condition, readStatements());
+                }
+                case RETURN:
+                    return new Ast.Statement.Return(readExpression());
+                case ERROR: {
+                    String message = readString();
+                    return new Ast.Statement.Error(message, readVarint());
+                }
+                default:
+                    throw new IOException("Invalid statement tag " + tag + ".");
+            }
+        }
+
+        private Optional<Ast.Expression> readOptional() throws IOException {
+            int tag = readVarint();
+            return tag == NONE ? Optional.empty() : Optional.of(readExpression(tag));
+        }
+
+        private Ast.Expression readExpression() throws IOException {
+            return readExpression(readVarint());
+        }
+
+        private Ast.Expression readExpression(int tag) throws IOException {
+            long span = readSpan();
+            return span(readExpressionFields(tag), span);
+        }
+
+        private Ast.Expression readExpressionFields(int tag) throws IOException {
+            switch (tag) {
+                case NIL:
+                    return new Ast.Expression.Literal(null);
+                case TRUE:
+                    return new Ast.Expression.Literal(Boolean.TRUE);
+                case FALSE:
+                    return new Ast.Expression.Literal(Boolean.FALSE);
+                case INTEGER: {
+                    long value = readVarlong();
+                    return new Ast.Expression.Literal(BigInteger.valueOf(value >>> 1 ^ -(value & 1)));
+                }
+                case BIG_INTEGER:
+                    return new Ast.Expression.Literal(new BigInteger(readString()));
+                case DECIMAL:
+                    return new Ast.Expression.Literal(new BigDecimal(readString()));
+                case CHARACTER:
+                    return new Ast.Expression.Literal((char) readVarint());
+                case STRING:
+                    return new Ast.Expression.Literal(readString());
+                case GROUP:
+                    return new Ast.Expression.Group(readExpression());
+                case BINARY: {
+                    String operator = readString();
+                    Ast.Expression left = readExpression();
+                    return new Ast.Expression.Binary(operator, left, readExpression());
+                }
+                case ACCESS: {
+                    String name = readString();
+                    Optional<Ast.Expression> offset = readOptional();
+                    return new Ast.Expression.Access(offset, name);
+                }
+                case FUNCTION: {
+                    String name = readString();
+                    return new Ast.Expression.Function(name, readExpressions());
+                }
+                case LIST:
+                    return new Ast.Expression.PlcList(readExpressions());
+                default:
+                    throw new IOException("Invalid expression tag " + tag + ".");
+            }
+        }
+
+        private List<Ast.Expression> readExpressions() throws IOException {
+            int count = readCount();
+            List<Ast.Expression> expressions = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                expressions.add(readExpression());
+            }
+            return expressions;
+        }
+
+        /**
+         * Reads a span written by {@link Encoder#writeSpan(Ast)}, returning
+         * the start in the high half and the end in the low half.
+         */
+        private long readSpan() throws IOException {
+            int start = readVarint();
+            if (start == 0) {
+                return -1L;
+            }
+            start = previous + ((start - 1) >>> 1 ^ -((start - 1) & 1));
+            previous = start;
+            return (long) start << 32 | start + readVarint() & 0xFFFFFFFFL;
+        }
+
+        private static <T extends Ast> T span(T ast, long span) {
+            if (span != -1L) {
+                ast.setSpan((int) (span >> 32), (int) span);
+            }
+            return ast;
+        }
+
+        private String readString() throws IOException {
+            int index = readVarint();
+            if (index >= strings.length) {
+                throw new IOException("Invalid string index " + index + ".");
+            }
+            return strings[index];
+        }
+
+        private Optional<String> readOptionalString() throws IOException {
+            int index = readVarint();
+            if (index == 0) {
+                return Optional.empty();
+            } else if (index > strings.length) {
+                throw new IOException("Invalid string index " + (index - 1) + ".");
+            }
+            return Optional.of(strings[index - 1]);
+        }
+
+        private String readUtf8(int length) throws IOException {
+            if (length <= buffer.length - position) {
+                fill(length);
+                String string = new String(buffer, position, length, StandardCharsets.UTF_8);
+                position += length;
+                return string;
+            }
+            // a corrupt length must not allocate more than the stream holds
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(buffer.length);
+            while (length > 0) {
+                int chunk = Math.min(length, buffer.length);
+                fill(chunk);
+                bytes.write(buffer, position, chunk);
+                position += chunk;
+                length -= chunk;
+            }
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Ensures {@code count} bytes are buffered from the current position,
+         * which must fit in the buffer. Only the missing bytes are read from
+         * the stream, so nothing past the encoding is consumed.
+         */
+        private void fill(int count) throws IOException {
+            if (limit - position >= count) {
+                return;
+            }
+            if (in == null) {
+                throw new EOFException();
+            }
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+            while (limit < count) {
+                int n = in.read(buffer, limit, count - limit);
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                limit += n;
+            }
+        }
+
+        private int read() throws IOException {
+            if (position == limit) {
+                fill(1);
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        /**
+         * Reads a count of elements, each encoded in at least one byte. The
+         * count is rejected if it is negative or, when decoding an array,
+         * larger than the bytes left, and is never used to size a buffer.
+         */
+        private int readCount() throws IOException {
+            int count = readVarint();
+            if (count < 0 || in == null && count > limit - position) {
+                throw new IOException("Corrupt encoding.");
+            }
+            return count;
+        }
+
+        private int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = read();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint.");
+        }
+
+        private long readVarlong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                int b = read();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint.");
+        }
+
+    }
+
+}
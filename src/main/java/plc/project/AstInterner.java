@@ -0,0 +1,301 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Deduplicates structurally equal statements and expressions, so that every
+ * distinct subtree is represented by a single canonical node shared wherever
+ * it occurs.
+ *
+ * Subtrees are interned bottom-up. Once the children of a node are canonical,
+ * two nodes are structurally equal exactly when they have the same kind,
+ * equal names and literals, and identical children, so each node is looked up
+ * by a key comparing only those, whose hash is computed once. Lists of
+ * statements and expressions are interned the same way and returned
+ * unmodifiable, so repeated blocks and argument lists are shared as well. As
+ * a result, canonical subtrees are equal exactly when they are the same
+ * object, which is checked in constant time with {@code ==}.
+ *
+ * Passes which build new nodes from canonical children can intern each node
+ * as it is built, which only looks up the node itself. Globals and functions
+ * are not interned, since they are definitions rather than values, but their
+ * contents are.
+ *
+ * The {@link Analyzer} annotates nodes in place, so an interned tree should
+ * only be analyzed if no node is shared between places where its annotations
+ * would differ, such as an access to variables of the same name in different
+ * scopes. Likewise, a shared node keeps the span of the first occurrence
+ * interned.
+ */
+public final class AstInterner {
+
+    private final Map<Key, Ast> nodes = new HashMap<>();
+    private final Map<Key, List<?>> lists = new HashMap<>();
+    private final Map<Ast.Expression, Optional<Ast.Expression>> optionals = new IdentityHashMap<>();
+    private final Set<Object> canonical = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long hits;
+
+    /**
+     * Returns a new source with the same globals and functions, whose values
+     * and statements are interned.
+     */
+    public Ast.Source intern(Ast.Source source) {
+        List<Ast.Global> globals = new ArrayList<>(source.getGlobals().size());
+        for (Ast.Global global : source.getGlobals()) {
+            globals.add(new Ast.Global(global.getName(), global.getTypeName(), global.getMutable(), intern(global.getValue())));
+        }
+        List<Ast.Function> functions = new ArrayList<>(source.getFunctions().size());
+        for (Ast.Function function : source.getFunctions()) {
+            functions.add(new Ast.Function(function.getName(), function.getParameters(), function.getParameterTypeNames(),
+                    function.getReturnTypeName(), intern(function.getStatements())));
+        }
+        return new Ast.Source(globals, functions);
+    }
+
+    /**
+     * Returns the canonical statement equal to {@code statement}, which is
+     * {@code statement} itself the first time it is interned.
+     */
+    public <T extends Ast.Statement> T intern(T statement) {
+        return internNode(statement);
+    }
+
+    /**
+     * Returns the canonical expression equal to {@code expression}.
+     */
+    public <T extends Ast.Expression> T intern(T expression) {
+        return internNode(expression);
+    }
+
+    /**
+     * Returns the number of canonical nodes.
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Returns the number of nodes which were replaced by an equal canonical
+     * node.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    public void clear() {
+        nodes.clear();
+        lists.clear();
+        optionals.clear();
+        canonical.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Ast> T internNode(T ast) {
+        if (canonical.contains(ast)) {
+            return ast;
+        }
+        Object[] parts = parts(ast);
+        boolean same = true;
+        for (int i = 0; i < parts.length; i++) {
+            Object part = internPart(parts[i]);
+            same &= part == parts[i];
+            parts[i] = part;
+        }
+        Key key = new Key(ast.getKind(), parts);
+        Ast node = nodes.get(key);
+        if (node != null) {
+            hits++;
+            return (T) node;
+        }
+        if (!same) {
+            node = create(ast.getKind(), parts);
+            node.setSpan(ast.getStart(), ast.getEnd());
+        } else {
+            node = ast;
+        }
+        nodes.put(key, node);
+        canonical.add(node);
+        return (T) node;
+    }
+
+    private Object internPart(Object part) {
+        if (part instanceof Ast) {
+            return internNode((Ast) part);
+        } else if (part instanceof List) {
+            return intern((List<?>) part);
+        } else if (part instanceof Optional && ((Optional<?>) part).orElse(null) instanceof Ast.Expression) {
+            return intern((Optional<?>) part);
+        }
+        return part;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<T> intern(List<T> list) {
+        if (canonical.contains(list)) {
+            return list;
+        }
+        Object[] elements = new Object[list.size()];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = internNode((Ast) list.get(i));
+        }
+        Key key = new Key(-1, elements);
+        List<?> interned = lists.get(key);
+        if (interned == null) {
+            interned = Collections.unmodifiableList(Arrays.asList(elements));
+            lists.put(key, interned);
+            canonical.add(interned);
+        }
+        return (List<T>) interned;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Optional<T> intern(Optional<T> optional) {
+        if (!optional.isPresent()) {
+            return optional;
+        }
+        Ast.Expression value = internNode((Ast.Expression) optional.get());
+        return (Optional<T>) optionals.computeIfAbsent(value, Optional::of);
+    }
+
+    /**
+     * Returns the names, literals and children of a node, in the order taken
+     * by {@link #create(int, Object[])}.
+     */
+    private static Object[] parts(Ast ast) {
+        switch (ast.getKind()) {
+            case Ast.EXPRESSION_STATEMENT:
+                return new Object[] {((Ast.Statement.Expression) ast).getExpression()};
+            case Ast.DECLARATION: {
+                Ast.Statement.Declaration declaration = (Ast.Statement.Declaration) ast;
+                return new Object[] {declaration.getName(), declaration.getTypeName(), declaration.getValue()};
+            }
+            case Ast.ASSIGNMENT:
+                return new Object[] {((Ast.Statement.Assignment) ast).getReceiver(), ((Ast.Statement.Assignment) ast).getValue()};
+            case Ast.IF: {
+                Ast.Statement.If statement = (Ast.Statement.If) ast;
+                return new Object[] {statement.getCondition(), statement.getThenStatements(), statement.getElseStatements()};
+            }
+            case Ast.SWITCH:
+                return new Object[] {((Ast.Statement.Switch) ast).getCondition(), ((Ast.Statement.Switch) ast).getCases()};
+            case Ast.CASE:
+                return new Object[] {((Ast.Statement.Case) ast).getValue(), ((Ast.Statement.Case) ast).getStatements()};
+            case Ast.WHILE:
+                return new Object[] {((Ast.Statement.While) ast).getCondition(), ((Ast.Statement.While) ast).getStatements()};
+            case Ast.RETURN:
+                return new Object[] {((Ast.Statement.Return) ast).getValue()};
+            case Ast.ERROR:
+                return new Object[] {((Ast.Statement.Error) ast).getMessage(), ((Ast.Statement.Error) ast).getIndex()};
+            case Ast.LITERAL:
+                return new Object[] {((Ast.Expression.Literal) ast).getLiteral()};
+            case Ast.GROUP:
+                return new Object[] {((Ast.Expression.Group) ast).getExpression()};
+            case Ast.BINARY: {
+                Ast.Expression.Binary binary = (Ast.Expression.Binary) ast;
+                return new Object[] {binary.getOperator(), binary.getLeft(), binary.getRight()};
+            }
+            case Ast.ACCESS:
+                return new Object[] {((Ast.Expression.Access) ast).getOffset(), ((Ast.Expression.Access) ast).getName()};
+            case Ast.CALL:
+                return new Object[] {((Ast.Expression.Function) ast).getName(), ((Ast.Expression.Function) ast).getArguments()};
+            case Ast.LIST:
+                return new Object[] {((Ast.Expression.PlcList) ast).getValues()};
+            default:
+                throw new IllegalArgumentException("Only statements and expressions are interned: " + ast.getClass().getName() + ".");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Ast create(int kind, Object[] parts) {
+        switch (kind) {
+            case Ast.EXPRESSION_STATEMENT:
+                return new Ast.Statement.Expression((Ast.Expression) parts[0]);
+            case Ast.DECLARATION:
+                return new Ast.Statement.Declaration((String) parts[0], (Optional<String>) parts[1], (Optional<Ast.Expression>) parts[2]);
+            case Ast.ASSIGNMENT:
+                return new Ast.Statement.Assignment((Ast.Expression) parts[0], (Ast.Expression) parts[1]);
+            case Ast.IF:
+                return new Ast.Statement.If((Ast.Expression) parts[0], (List<Ast.Statement>) parts[1], (List<Ast.Statement>) parts[2]);
+            case Ast.SWITCH:
+                return new Ast.Statement.Switch((Ast.Expression) parts[0], (List<Ast.Statement.Case>) parts[1]);
+            case Ast.CASE:
+                return new Ast.Statement.Case((Optional<Ast.Expression>) parts[0], (List<Ast.Statement>) parts[1]);
+            case Ast.WHILE:
+                return new Ast.Statement.While((Ast.Expression) parts[0], (List<Ast.Statement>) parts[1]);
+            case Ast.RETURN:
+                return new Ast.Statement.Return((Ast.Expression) parts[0]);
+            case Ast.ERROR:
+                return new Ast.Statement.Error((String) parts[0], (Integer) parts[1]);
+            case Ast.LITERAL:
+                return new Ast.Expression.Literal(parts[0]);
+            case Ast.GROUP:
+                return new Ast.Expression.Group((Ast.Expression) parts[0]);
+            case Ast.BINARY:
+                return new Ast.Expression.Binary((String) parts[0], (Ast.Expression) parts[1], (Ast.Expression) parts[2]);
+            case Ast.ACCESS:
+                return new Ast.Expression.Access((Optional<Ast.Expression>) parts[0], (String) parts[1]);
+            case Ast.CALL:
+                return new Ast.Expression.Function((String) parts[0], (List<Ast.Expression>) parts[1]);
+            case Ast.LIST:
+                return new Ast.Expression.PlcList((List<Ast.Expression>) parts[0]);
+            default:
+                throw new AssertionError("Invalid node kind " + kind + ".");
+        }
+    }
+
+    /**
+     * Identifies a node by its kind and parts, or a list by its elements,
+     * where nodes, lists and optional nodes are canonical and compared by
+     * identity, while names and literals are compared by value.
+     */
+    private static final class Key {
+
+        private final int kind;
+        private final Object[] parts;
+        private final int hash;
+
+        private Key(int kind, Object[] parts) {
+            this.kind = kind;
+            this.parts = parts;
+            int hash = kind;
+            for (Object part : parts) {
+                hash = 31 * hash + (byIdentity(part) ? System.identityHashCode(part) : Objects.hashCode(part));
+            }
+            this.hash = hash;
+        }
+
+        private static boolean byIdentity(Object part) {
+            return part instanceof Ast || part instanceof List
+                    || part instanceof Optional && ((Optional<?>) part).orElse(null) instanceof Ast;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key) || ((Key) obj).kind != kind || ((Key) obj).parts.length != parts.length) {
+                return false;
+            }
+            Object[] other = ((Key) obj).parts;
+            for (int i = 0; i < parts.length; i++) {
+                if (byIdentity(parts[i]) ? parts[i] != other[i] : !Objects.equals(parts[i], other[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+}
@@ -0,0 +1,260 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A {@link PassManager.Pass} which transforms a source by visiting every node
+ * and returning its replacement. Each visit method rewrites the children of
+ * its node first and only creates a new node if a child changed, copying the
+ * span of the old one, so an unchanged subtree is returned as the same object
+ * and a pass which changes nothing allocates nothing. Passes override the
+ * visit methods for the nodes they transform, typically calling the method
+ * they override to rewrite the children first.
+ *
+ * A global, function or statement, including a case, which is rewritten to
+ * {@code null} is removed from its list. Expressions, including arguments and
+ * list values, cannot be removed, and rewriting one to {@code null} throws an
+ * {@link IllegalStateException}.
+ *
+ * New nodes do not have the annotations added by the {@link Analyzer}, so
+ * passes should run before the source is analyzed.
+ */
+public abstract class AstRewriter implements Ast.Visitor<Ast>, PassManager.Pass {
+
+    @Override
+    public Ast.Source run(Ast.Source source) {
+        return (Ast.Source) visit(source);
+    }
+
+    /**
+     * Returns the replacement for {@code ast}, which must be an expression.
+     */
+    protected Ast.Expression rewrite(Ast.Expression ast) {
+        Ast.Expression rewritten = (Ast.Expression) visit(ast);
+        if (rewritten == null) {
+            throw new IllegalStateException("Expression " + ast.getClass().getSimpleName() + " was rewritten to null.");
+        }
+        return rewritten;
+    }
+
+    protected Optional<Ast.Expression> rewrite(Optional<Ast.Expression> ast) {
+        if (!ast.isPresent()) {
+            return ast;
+        }
+        Ast.Expression rewritten = rewrite(ast.get());
+        return rewritten == ast.get() ? ast : Optional.of(rewritten);
+    }
+
+    /**
+     * Rewrites each node of {@code asts}, returning {@code asts} itself if
+     * every node is unchanged. Nodes rewritten to {@code null} are removed,
+     * so this is not used for expressions (see {@link #rewriteExpressions}).
+     */
+    protected <T extends Ast> List<T> rewrite(List<T> asts) {
+        return rewrite(asts, false);
+    }
+
+    /**
+     * Rewrites each expression of {@code asts} like {@link
+     * #rewrite(Ast.Expression)}, returning {@code asts} itself if every
+     * expression is unchanged.
+     */
+    protected List<Ast.Expression> rewriteExpressions(List<Ast.Expression> asts) {
+        return rewrite(asts, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Ast> List<T> rewrite(List<T> asts, boolean expressions) {
+        List<T> rewritten = null;
+        for (int i = 0; i < asts.size(); i++) {
+            T ast = asts.get(i);
+            T result = expressions ? (T) rewrite((Ast.Expression) ast) : (T) visit(ast);
+            if (result != ast && rewritten == null) {
+                rewritten = new ArrayList<>(asts.subList(0, i));
+            }
+            if (rewritten != null && result != null) {
+                rewritten.add(result);
+            }
+        }
+        return rewritten != null ? rewritten : asts;
+    }
+
+    @Override
+    public Ast visit(Ast.Source ast) {
+        List<Ast.Global> globals = rewrite(ast.getGlobals());
+        List<Ast.Function> functions = rewrite(ast.getFunctions());
+        if (globals == ast.getGlobals() && functions == ast.getFunctions()) {
+            return ast;
+        }
+        return span(new Ast.Source(globals, functions), ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Global ast) {
+        Optional<Ast.Expression> value = rewrite(ast.getValue());
+        if (value == ast.getValue()) {
+            return ast;
+        }
+        return span(new Ast.Global(ast.getName(), ast.getTypeName(), ast.getMutable(), value), ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Function ast) {
+        List<Ast.Statement> statements = rewrite(ast.getStatements());
+        if (statements == ast.getStatements()) {
+            return ast;
+        }
+        return span(new Ast.Function(ast.getName(), ast.getParameters(), ast.getParameterTypeNames(),
+                ast.getReturnTypeName(), statements), ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Expression ast) {
+        Ast.Expression expression = rewrite(ast.getExpression());
+        if (expression == ast.getExpression()) {
+            return ast;
+        }
+        return span(new Ast.Statement.Expression(expression), ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Declaration ast) {
+        Optional<Ast.Expression> value = rewrite(ast.getValue());
+        if (value == ast.getValue()) {
+            return ast;
+        }
+        return span(new Ast.Statement.Declaration(ast.getName(), ast.getTypeName(), value), ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Assignment ast) {
+        Ast.Expression receiver = rewrite(ast.getReceiver());
+        Ast.Expression value = rewrite(ast.getValue());
+        if (receiver == ast.getReceiver() && value == ast.getValue()) {
+            return ast;
+        }
+        return span(new Ast.Statement.Assignment(receiver, value), ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.If ast) {
+        Ast.Expression condition = rewrite(ast.getCondition());
+        List<Ast.Statement> thenStatements = rewrite(ast.getThenStatements());
+        List<Ast.Statement> elseStatements = rewrite(ast.getElseStatements());
+        if (condition == ast.getCondition() && thenStatements == ast.getThenStatements()
+                && elseStatements == ast.getElseStatements()) {
+            return ast;
+        }
+        return span(new Ast.Statement.If(condition, thenStatements, elseStatements), ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Switch ast) {
+        Ast.Expression condition = rewrite(ast.getCondition());
+        List<Ast.Statement.Case> cases = rewrite(ast.getCases());
+        if (condition == ast.getCondition() && cases == ast.getCases()) {
+            return ast;
+        }
+        return span(new Ast.Statement.Switch(condition, cases), ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Case ast) {
+        Optional<Ast.Expression> value = rewrite(ast.getValue());
+        List<Ast.Statement> statements = rewrite(ast.getStatements());
+        if (value == ast.getValue() && statements == ast.getStatements()) {
+            return ast;
+        }
+        return span(new Ast.Statement.Case(value, statements), ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.While ast) {
+        Ast.Expression condition = rewrite(ast.getCondition());
+        List<Ast.Statement> statements = rewrite(ast.getStatements());
+        if (condition == ast.getCondition() && statements == ast.getStatements()) {
+            return ast;
+        }
+        return span(new Ast.Statement.While(condition, statements), ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Return ast) {
+        Ast.Expression value = rewrite(ast.getValue());
+        if (value == ast.getValue()) {
+            return ast;
+        }
+        return span(new Ast.Statement.Return(value), ast);
+    }
+
+    /**
+     * Keeps the error, so that it is still reported by whichever visitor runs
+     * after the passes.
+     */
+    @Override
+    public Ast visit(Ast.Statement.Error ast) {
+        return ast;
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Literal ast) {
+        return ast;
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Group ast) {
+        Ast.Expression expression = rewrite(ast.getExpression());
+        if (expression == ast.getExpression()) {
+            return ast;
+        }
+        return span(new Ast.Expression.Group(expression), ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Binary ast) {
+        Ast.Expression left = rewrite(ast.getLeft());
+        Ast.Expression right = rewrite(ast.getRight());
+        if (left == ast.getLeft() && right == ast.getRight()) {
+            return ast;
+        }
+        return span(new Ast.Expression.Binary(ast.getOperator(), left, right), ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Access ast) {
+        Optional<Ast.Expression> offset = rewrite(ast.getOffset());
+        if (offset == ast.getOffset()) {
+            return ast;
+        }
+        return span(new Ast.Expression.Access(offset, ast.getName()), ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Function ast) {
+        List<Ast.Expression> arguments = rewriteExpressions(ast.getArguments());
+        if (arguments == ast.getArguments()) {
+            return ast;
+        }
+        return span(new Ast.Expression.Function(ast.getName(), arguments), ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.PlcList ast) {
+        List<Ast.Expression> values = rewriteExpressions(ast.getValues());
+        if (values == ast.getValues()) {
+            return ast;
+        }
+        return span(new Ast.Expression.PlcList(values), ast);
+    }
+
+    /**
+     * Gives {@code ast} the span of the node {@code original} it replaces.
+     */
+    protected static <T extends Ast> T span(T ast, Ast original) {
+        ast.setSpan(original.getStart(), original.getEnd());
+        return ast;
+    }
+
+}
@@ -0,0 +1,194 @@
+package plc.project;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link Lexer.CharStream} over UTF-8 encoded bytes, such as a file mapped
+ * into memory with {@link #map(Path)}, which decodes characters as the lexer
+ * reads them instead of first copying the input into a {@link String}.
+ *
+ * Indices are character indices as with a string input, so tokens are
+ * identical regardless of the stream they were lexed from. Literals of tokens
+ * containing only ASCII characters are views over the buffer and are only
+ * copied when {@link Token#getLiteral()} is called.
+ *
+ * The position of the current character is tracked as a cursor holding the
+ * byte offset shifted left by one, with the low bit set when the cursor is on
+ * the second (low surrogate) half of a supplementary character.
+ */
+public final class ByteBufferCharStream extends Lexer.CharStream {
+
+    private final ByteBuffer buffer;
+    private final int limit;
+    private long cursor;
+    private long start;
+    private boolean ascii = true;
+
+    public ByteBufferCharStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.limit = buffer.limit();
+        this.cursor = (long) buffer.position() << 1;
+        this.start = cursor;
+    }
+
+    /**
+     * Maps the file at {@code path} into memory. As with any {@link
+     * java.nio.MappedByteBuffer}, the file must be smaller than 2GB.
+     */
+    public static ByteBufferCharStream map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new ByteBufferCharStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    @Override
+    public boolean has(int offset) {
+        return (seek(offset) >>> 1) < limit;
+    }
+
+    @Override
+    public char get(int offset) {
+        long position = seek(offset);
+        if ((position >>> 1) >= limit) {
+            throw new IndexOutOfBoundsException("Index " + (index + offset) + " is past the end of the input.");
+        }
+        return charAt(position);
+    }
+
+    @Override
+    public void advance() {
+        if (buffer.get((int) (cursor >>> 1)) < 0) {
+            ascii = false;
+        }
+        cursor = next(cursor);
+        super.advance();
+    }
+
+    @Override
+    public void skip() {
+        super.skip();
+        start = cursor;
+        ascii = true;
+    }
+
+    @Override
+    public Token emit(Token.Type type) {
+        int startIndex = index - length;
+        CharSequence literal;
+        if (ascii) {
+            literal = new AsciiSequence(buffer, (int) (start >>> 1), (int) (cursor >>> 1));
+        } else {
+            StringBuilder builder = new StringBuilder(length);
+            for (long position = start; position != cursor; position = next(position)) {
+                builder.append(charAt(position));
+            }
+            literal = builder.toString();
+        }
+        skip();
+        return new Token(type, literal, startIndex);
+    }
+
+    private long seek(int offset) {
+        long position = cursor;
+        for (int i = 0; i < offset && (position >>> 1) < limit; i++) {
+            position = next(position);
+        }
+        return position;
+    }
+
+    private long next(long position) {
+        int offset = (int) (position >>> 1);
+        int width = width(offset);
+        if (width == 4 && (position & 1) == 0) {
+            return position | 1;
+        }
+        return (long) (offset + width) << 1;
+    }
+
+    private char charAt(long position) {
+        int offset = (int) (position >>> 1);
+        int width = width(offset);
+        int lead = buffer.get(offset) & 0xFF;
+        switch (width) {
+            case 1:
+                return lead < 0x80 ? (char) lead : '\uFFFD';
+            case 2:
+                return (char) ((lead & 0x1F) << 6 | continuation(offset + 1));
+            case 3:
+                return (char) ((lead & 0x0F) << 12 | continuation(offset + 1) << 6 | continuation(offset + 2));
+            default:
+                int codePoint = (lead & 0x07) << 18 | continuation(offset + 1) << 12
+                        | continuation(offset + 2) << 6 | continuation(offset + 3);
+                return (position & 1) == 0 ? Character.highSurrogate(codePoint) : Character.lowSurrogate(codePoint);
+        }
+    }
+
+    /**
+     * Returns the number of bytes in the UTF-8 sequence starting at {@code
+     * offset}, or 1 for a malformed sequence which is decoded as U+FFFD.
+     */
+    private int width(int offset) {
+        int lead = buffer.get(offset) & 0xFF;
+        int width = lead < 0x80 ? 1 : lead < 0xC2 ? 0 : lead < 0xE0 ? 2 : lead < 0xF0 ? 3 : lead < 0xF5 ? 4 : 0;
+        if (width == 0 || offset + width > limit) {
+            return 1;
+        }
+        for (int i = 1; i < width; i++) {
+            if ((buffer.get(offset + i) & 0xC0) != 0x80) {
+                return 1;
+            }
+        }
+        return width;
+    }
+
+    private int continuation(int offset) {
+        return buffer.get(offset) & 0x3F;
+    }
+
+    /**
+     * A view over ASCII bytes in the buffer, copied only by {@link #toString()}.
+     */
+    private static final class AsciiSequence implements CharSequence {
+
+        private final ByteBuffer buffer;
+        private final int start;
+        private final int end;
+
+        private AsciiSequence(ByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) buffer.get(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new AsciiSequence(buffer, this.start + start, this.start + end);
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[end - start];
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(start);
+            slice.get(bytes);
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+
+    }
+
+}
@@ -0,0 +1,499 @@
+package plc.project;
+
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+/**
+ * A table-driven lexer producing the same tokens as {@link Lexer#lex()}
+ * without using regular expressions.
+ *
+ * Every character is first mapped to a character class through a precomputed
+ * table, and the class is then used to look up the next state in a transition
+ * table. A negative entry in the transition table is an action: either
+ * {@link #ACCEPT}, which emits the token for the current state without
+ * consuming the character, or an error which is reported as a {@link
+ * ParseException} at the index of the invalid character.
+ *
+ * The states intentionally mirror the behavior of {@link Lexer}, including the
+ * handling of leading zeros and lexing {@code ||} as two {@code |} operators
+ * (the regex lexer reads {@code "|"} as an empty alternation), so both lexers
+ * can be used interchangeably. The only difference is that an {@code @} which
+ * is not followed by a letter is reported as an error instead of producing an
+ * empty identifier.
+ *
+ * Keywords and operators are recognized while scanning: the characters of
+ * each token are packed into a key which is classified with the perfect hash
+ * in {@link Symbol}, and matching tokens carry the symbol's code and share its
+ * canonical literal instead of copying it from the input.
+ *
+ * Besides {@link #lex()}, tokens can be pulled one at a time through {@link
+ * #iterator()}, which combined with a {@link ReaderCharStream} lexes inputs of
+ * any size in constant memory.
+ *
+ * {@link #lex(List)} lexes in a recovering mode which collects every error in
+ * the input instead of throwing at the first one, skipping each invalid token
+ * and resuming at the next whitespace or delimiter.
+ */
+public final class DfaLexer implements Iterable<Token> {
+
+    private static final int CLASS_OTHER = 0;
+    private static final int CLASS_WHITESPACE = 1;
+    private static final int CLASS_NEWLINE = 2;
+    private static final int CLASS_LETTER = 3;
+    private static final int CLASS_ESCAPE_LETTER = 4;
+    private static final int CLASS_ZERO = 5;
+    private static final int CLASS_DIGIT = 6;
+    private static final int CLASS_AT = 7;
+    private static final int CLASS_MINUS = 8;
+    private static final int CLASS_DOT = 9;
+    private static final int CLASS_SINGLE_QUOTE = 10;
+    private static final int CLASS_DOUBLE_QUOTE = 11;
+    private static final int CLASS_BACKSLASH = 12;
+    private static final int CLASS_UNDERSCORE = 13;
+    private static final int CLASS_BANG = 14;
+    private static final int CLASS_EQUALS = 15;
+    private static final int CLASS_AMPERSAND = 16;
+    private static final int CLASS_TERMINATOR = 17;
+    private static final int CLASS_EOF = 18;
+    private static final int CLASSES = 19;
+
+    private static final int STATE_START = 0;
+    private static final int STATE_IDENTIFIER = 1;
+    private static final int STATE_AT = 2;
+    private static final int STATE_MINUS = 3;
+    private static final int STATE_NEGATIVE_ZERO = 4;
+    private static final int STATE_NEGATIVE_ZERO_FRACTION = 5;
+    private static final int STATE_ZERO = 6;
+    private static final int STATE_ZERO_DOT = 7;
+    private static final int STATE_ZERO_FRACTION = 8;
+    private static final int STATE_INTEGER = 9;
+    private static final int STATE_INTEGER_DOT = 10;
+    private static final int STATE_DECIMAL = 11;
+    private static final int STATE_CHARACTER_OPEN = 12;
+    private static final int STATE_CHARACTER_ESCAPE = 13;
+    private static final int STATE_CHARACTER_BODY = 14;
+    private static final int STATE_CHARACTER_DONE = 15;
+    private static final int STATE_STRING = 16;
+    private static final int STATE_STRING_ESCAPE = 17;
+    private static final int STATE_STRING_DONE = 18;
+    private static final int STATE_BANG = 19;
+    private static final int STATE_EQUALS = 20;
+    private static final int STATE_AMPERSAND = 21;
+    private static final int STATE_OPERATOR_DONE = 22;
+    private static final int STATES = 23;
+
+    private static final byte ACCEPT = -1;
+    private static final byte ERROR_CHARACTER_USAGE = -2;
+    private static final byte ERROR_STRING_CHARACTER = -3;
+    private static final byte ERROR_IDENTIFIER = -4;
+    private static final byte ERROR_DECIMAL = -5;
+    private static final byte ERROR_NEGATIVE_ZERO = -6;
+    private static final byte ERROR_NUMBER = -7;
+    private static final byte ERROR_DECIMALS = -8;
+    private static final byte ERROR_CHARACTER = -9;
+    private static final byte ERROR_ESCAPE = -10;
+
+    /**
+     * Error messages and index offsets (relative to the current character),
+     * indexed by {@code ERROR_CHARACTER_USAGE - action}.
+     */
+    private static final String[] ERROR_MESSAGES = {
+            "Invalid Character Usage", "Invalid Character Usage", "Invalid Identifier", "Invalid Decimal",
+            "Invalid Decimal", "Invalid Number", "Too many Decimals", "Invalid Character", "Invalid escape"
+    };
+    private static final int[] ERROR_OFFSETS = {0, 1, 0, 0, 1, 0, 1, 1, 0};
+
+    private static final byte[] ASCII_CLASSES = new byte[128];
+    private static final byte[][] TRANSITIONS = new byte[STATES][CLASSES];
+    private static final Token.Type[] ACCEPT_TYPES = new Token.Type[STATES];
+    private static final Token.Type[] EOF_TYPES = new Token.Type[STATES];
+
+    static {
+        for (char c = 'A'; c <= 'Z'; c++) {
+            ASCII_CLASSES[c] = CLASS_LETTER;
+            ASCII_CLASSES[Character.toLowerCase(c)] = CLASS_LETTER;
+        }
+        for (char c = '1'; c <= '9'; c++) {
+            ASCII_CLASSES[c] = CLASS_DIGIT;
+        }
+        classify(CLASS_WHITESPACE, ' ', '\b', '\t');
+        classify(CLASS_NEWLINE, '\n', '\r');
+        classify(CLASS_ESCAPE_LETTER, 'b', 'n', 'r', 't');
+        classify(CLASS_ZERO, '0');
+        classify(CLASS_AT, '@');
+        classify(CLASS_MINUS, '-');
+        classify(CLASS_DOT, '.');
+        classify(CLASS_SINGLE_QUOTE, '\'');
+        classify(CLASS_DOUBLE_QUOTE, '"');
+        classify(CLASS_BACKSLASH, '\\');
+        classify(CLASS_UNDERSCORE, '_');
+        classify(CLASS_BANG, '!');
+        classify(CLASS_EQUALS, '=');
+        classify(CLASS_AMPERSAND, '&');
+
+        int[] letters = {CLASS_LETTER, CLASS_ESCAPE_LETTER};
+        int[] digits = {CLASS_ZERO, CLASS_DIGIT};
+        int[] invalidNumber = {CLASS_LETTER, CLASS_ESCAPE_LETTER, CLASS_SINGLE_QUOTE, CLASS_DOUBLE_QUOTE};
+        int[] escapes = {CLASS_ESCAPE_LETTER, CLASS_SINGLE_QUOTE, CLASS_DOUBLE_QUOTE, CLASS_BACKSLASH};
+
+        otherwise(STATE_START, STATE_OPERATOR_DONE);
+        on(STATE_START, STATE_IDENTIFIER, letters);
+        on(STATE_START, STATE_AT, CLASS_AT);
+        on(STATE_START, STATE_MINUS, CLASS_MINUS);
+        on(STATE_START, STATE_ZERO, CLASS_ZERO);
+        on(STATE_START, STATE_INTEGER, CLASS_DIGIT);
+        on(STATE_START, STATE_CHARACTER_OPEN, CLASS_SINGLE_QUOTE);
+        on(STATE_START, STATE_STRING, CLASS_DOUBLE_QUOTE);
+        on(STATE_START, STATE_BANG, CLASS_BANG);
+        on(STATE_START, STATE_EQUALS, CLASS_EQUALS);
+        on(STATE_START, STATE_AMPERSAND, CLASS_AMPERSAND);
+        on(STATE_START, ERROR_CHARACTER_USAGE, CLASS_NEWLINE, CLASS_TERMINATOR, CLASS_EOF);
+
+        accept(STATE_IDENTIFIER, Token.Type.IDENTIFIER);
+        on(STATE_IDENTIFIER, STATE_IDENTIFIER, CLASS_LETTER, CLASS_ESCAPE_LETTER, CLASS_ZERO, CLASS_DIGIT, CLASS_UNDERSCORE, CLASS_MINUS);
+        otherwise(STATE_AT, ERROR_IDENTIFIER);
+        on(STATE_AT, STATE_IDENTIFIER, letters);
+
+        accept(STATE_MINUS, Token.Type.OPERATOR);
+        on(STATE_MINUS, STATE_NEGATIVE_ZERO, CLASS_ZERO);
+        on(STATE_MINUS, STATE_INTEGER, CLASS_DIGIT);
+        otherwise(STATE_NEGATIVE_ZERO, ERROR_NEGATIVE_ZERO);
+        on(STATE_NEGATIVE_ZERO, STATE_NEGATIVE_ZERO_FRACTION, CLASS_DOT);
+        otherwise(STATE_NEGATIVE_ZERO_FRACTION, ERROR_DECIMAL);
+        on(STATE_NEGATIVE_ZERO_FRACTION, STATE_NEGATIVE_ZERO_FRACTION, digits);
+        acceptEof(STATE_NEGATIVE_ZERO_FRACTION, Token.Type.DECIMAL);
+
+        accept(STATE_ZERO, Token.Type.INTEGER);
+        on(STATE_ZERO, STATE_ZERO_DOT, CLASS_DOT);
+        accept(STATE_ZERO_DOT, Token.Type.INTEGER);
+        on(STATE_ZERO_DOT, STATE_ZERO_FRACTION, digits);
+        on(STATE_ZERO_DOT, ERROR_NUMBER, invalidNumber);
+        on(STATE_ZERO_DOT, ERROR_DECIMAL, CLASS_EOF);
+        accept(STATE_ZERO_FRACTION, Token.Type.INTEGER);
+        on(STATE_ZERO_FRACTION, STATE_ZERO_FRACTION, digits);
+        on(STATE_ZERO_FRACTION, ERROR_NUMBER, invalidNumber);
+        acceptEof(STATE_ZERO_FRACTION, Token.Type.DECIMAL);
+
+        accept(STATE_INTEGER, Token.Type.INTEGER);
+        on(STATE_INTEGER, STATE_INTEGER, digits);
+        on(STATE_INTEGER, STATE_INTEGER_DOT, CLASS_DOT);
+        on(STATE_INTEGER, ERROR_NUMBER, invalidNumber);
+        otherwise(STATE_INTEGER_DOT, ERROR_DECIMAL);
+        on(STATE_INTEGER_DOT, STATE_DECIMAL, digits);
+        accept(STATE_DECIMAL, Token.Type.DECIMAL);
+        on(STATE_DECIMAL, STATE_DECIMAL, digits);
+        on(STATE_DECIMAL, ERROR_DECIMALS, CLASS_DOT);
+        on(STATE_DECIMAL, ERROR_NUMBER, invalidNumber);
+
+        otherwise(STATE_CHARACTER_OPEN, STATE_CHARACTER_BODY);
+        on(STATE_CHARACTER_OPEN, STATE_CHARACTER_ESCAPE, CLASS_BACKSLASH);
+        on(STATE_CHARACTER_OPEN, ERROR_CHARACTER, CLASS_SINGLE_QUOTE, CLASS_NEWLINE, CLASS_EOF);
+        otherwise(STATE_CHARACTER_ESCAPE, ERROR_ESCAPE);
+        on(STATE_CHARACTER_ESCAPE, STATE_CHARACTER_BODY, escapes);
+        otherwise(STATE_CHARACTER_BODY, ERROR_CHARACTER);
+        on(STATE_CHARACTER_BODY, STATE_CHARACTER_DONE, CLASS_SINGLE_QUOTE);
+        accept(STATE_CHARACTER_DONE, Token.Type.CHARACTER);
+
+        otherwise(STATE_STRING, STATE_STRING);
+        on(STATE_STRING, STATE_STRING_ESCAPE, CLASS_BACKSLASH);
+        on(STATE_STRING, STATE_STRING_DONE, CLASS_DOUBLE_QUOTE);
+        on(STATE_STRING, ERROR_STRING_CHARACTER, CLASS_NEWLINE);
+        on(STATE_STRING, ERROR_CHARACTER_USAGE, CLASS_EOF);
+        otherwise(STATE_STRING_ESCAPE, ERROR_ESCAPE);
+        on(STATE_STRING_ESCAPE, STATE_STRING, escapes);
+        accept(STATE_STRING_DONE, Token.Type.STRING);
+
+        accept(STATE_BANG, Token.Type.OPERATOR);
+        on(STATE_BANG, STATE_OPERATOR_DONE, CLASS_EQUALS);
+        accept(STATE_EQUALS, Token.Type.OPERATOR);
+        on(STATE_EQUALS, STATE_OPERATOR_DONE, CLASS_EQUALS);
+        accept(STATE_AMPERSAND, Token.Type.OPERATOR);
+        on(STATE_AMPERSAND, STATE_OPERATOR_DONE, CLASS_AMPERSAND);
+        accept(STATE_OPERATOR_DONE, Token.Type.OPERATOR);
+    }
+
+    private final Lexer.CharStream chars;
+    private long key;
+
+    public DfaLexer(String input) {
+        this(new Lexer.CharStream(input));
+    }
+
+    public DfaLexer(Reader reader) {
+        this(new ReaderCharStream(reader));
+    }
+
+    public DfaLexer(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1));
+    }
+
+    public DfaLexer(Lexer.CharStream chars) {
+        this.chars = chars;
+    }
+
+    /**
+     * Repeatedly lexes the input using {@link #lexToken()}, skipping over
+     * whitespace between tokens.
+     */
+    public List<Token> lex() {
+        List<Token> tokens = new ArrayList<>();
+        for (Token token = next(); token != null; token = next()) {
+            tokens.add(token);
+        }
+        return tokens;
+    }
+
+    /**
+     * Lexes the entire input as with {@link #lex()}, but instead of throwing
+     * at the first invalid token, each error is added to {@code errors} and
+     * lexing resumes after the invalid token (see {@link #recover(char,
+     * int)}). The returned tokens are those which were valid.
+     */
+    public List<Token> lex(List<ParseException> errors) {
+        List<Token> tokens = new ArrayList<>();
+        while (chars.has(0)) {
+            char c = chars.get(0);
+            int type = classOf(c);
+            if (type == CLASS_WHITESPACE || type == CLASS_NEWLINE) {
+                chars.advance();
+                chars.skip();
+            } else {
+                int start = chars.index;
+                try {
+                    tokens.add(lexToken());
+                } catch (ParseException e) {
+                    errors.add(e);
+                    recover(c, start);
+                }
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Lexes the tokens which start before the index {@code end}, skipping over
+     * whitespace. The last token may extend past {@code end}.
+     */
+    List<Token> lex(int end) {
+        List<Token> tokens = new ArrayList<>();
+        while (chars.has(0) && chars.index < end) {
+            int type = classOf(chars.get(0));
+            if (type == CLASS_WHITESPACE || type == CLASS_NEWLINE) {
+                chars.advance();
+                chars.skip();
+            } else {
+                tokens.add(lexToken());
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Skips any whitespace and lexes the next token, returning {@code null} at
+     * the end of the input.
+     */
+    public Token next() {
+        while (chars.has(0)) {
+            int type = classOf(chars.get(0));
+            if (type == CLASS_WHITESPACE || type == CLASS_NEWLINE) {
+                chars.advance();
+                chars.skip();
+            } else {
+                return lexToken();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns an iterator which lexes each token as it is requested. Since the
+     * lexer consumes its input, it can only be iterated once.
+     */
+    @Override
+    public Iterator<Token> iterator() {
+        return new Iterator<Token>() {
+
+            private Token next = null;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    next = DfaLexer.this.next();
+                }
+                return next != null;
+            }
+
+            @Override
+            public Token next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Token token = next;
+                next = null;
+                return token;
+            }
+
+        };
+    }
+
+    @Override
+    public Spliterator<Token> spliterator() {
+        return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * Lexes the entire input into a packed {@link TokenBuffer}, which unlike
+     * {@link #lex()} does not create any {@link Token} objects. This requires
+     * the stream to hold its input in memory so literals can be sliced from it.
+     */
+    public TokenBuffer lexBuffer() {
+        CharSequence source = chars.source();
+        if (source == null) {
+            throw new IllegalStateException("A token buffer requires the input to be held in memory.");
+        }
+        TokenBuffer tokens = new TokenBuffer(source, Math.max(source.length() / 4, 16));
+        while (chars.has(0)) {
+            int type = classOf(chars.get(0));
+            if (type == CLASS_WHITESPACE || type == CLASS_NEWLINE) {
+                chars.advance();
+                chars.skip();
+            } else {
+                tokens.add(scanToken(), chars.index - chars.length, chars.length, code());
+                chars.skip();
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Lexes the next token using {@link #scanToken()}. As with {@link
+     * Lexer#lexToken()}, the next character should start a valid token.
+     */
+    public Token lexToken() {
+        Token.Type type = scanToken();
+        return chars.emit(type, code());
+    }
+
+    /**
+     * Runs the state machine from the start state until the current token is
+     * accepted or rejected, returning the type of the accepted token. The
+     * token's characters are left in the char stream to be emitted, and are
+     * also packed into {@link #key} for looking up symbols.
+     */
+    private Token.Type scanToken() {
+        int state = STATE_START;
+        key = 0;
+        while (true) {
+            boolean has = chars.has(0);
+            char c = has ? chars.get(0) : 0;
+            int action = TRANSITIONS[state][has ? classOf(c) : CLASS_EOF];
+            if (action >= 0) {
+                key = Symbol.pack(key, c);
+                chars.advance();
+                state = action;
+                // a character literal needs at least the character and the closing quote
+                if (state == STATE_CHARACTER_OPEN && !chars.has(1)) {
+                    throw new ParseException("Invalid Character", chars.index + 1);
+                }
+            } else if (action == ACCEPT) {
+                // a zero must be followed by a decimal point unless it ends the input
+                if (state == STATE_ZERO && chars.has(1)) {
+                    throw new ParseException("Invalid Integer", chars.index);
+                }
+                return chars.has(0) ? ACCEPT_TYPES[state] : EOF_TYPES[state];
+            } else {
+                int error = ERROR_CHARACTER_USAGE - action;
+                throw new ParseException(ERROR_MESSAGES[error], chars.index + ERROR_OFFSETS[error]);
+            }
+        }
+    }
+
+    /**
+     * Skips the rest of an invalid token which started at {@code start} with
+     * the character {@code first}. A string or character literal is skipped
+     * through its closing quote or up to the end of the line, while any other
+     * token is skipped up to the next whitespace or delimiter. At least one
+     * character is always skipped so lexing makes progress.
+     */
+    private void recover(char first, int start) {
+        if (chars.index == start) {
+            chars.advance();
+        }
+        int quote = classOf(first);
+        boolean literal = quote == CLASS_SINGLE_QUOTE || quote == CLASS_DOUBLE_QUOTE;
+        while (chars.has(0)) {
+            int type = classOf(chars.get(0));
+            if (type == CLASS_NEWLINE || type == CLASS_TERMINATOR) {
+                break;
+            } else if (literal) {
+                chars.advance();
+                if (type == quote) {
+                    break;
+                } else if (type == CLASS_BACKSLASH && chars.has(0) && classOf(chars.get(0)) != CLASS_NEWLINE) {
+                    chars.advance();
+                }
+            } else if (type == CLASS_WHITESPACE || type == CLASS_OTHER) {
+                break;
+            } else {
+                chars.advance();
+            }
+        }
+        chars.skip();
+    }
+
+    /**
+     * Returns the {@link Symbol} code of the token just scanned, using the key
+     * packed from its characters by {@link #scanToken()}.
+     */
+    private int code() {
+        return chars.length <= Symbol.MAX_LENGTH ? Symbol.lookup(key) : Symbol.NONE;
+    }
+
+    private static int classOf(char c) {
+        if (c < 128) {
+            return ASCII_CLASSES[c];
+        }
+        return c == 0x85 || c == 0x2028 || c == 0x2029 ? CLASS_TERMINATOR : CLASS_OTHER;
+    }
+
+    private static void classify(int type, char... characters) {
+        for (char c : characters) {
+            ASCII_CLASSES[c] = (byte) type;
+        }
+    }
+
+    private static void on(int state, int action, int... types) {
+        for (int type : types) {
+            TRANSITIONS[state][type] = (byte) action;
+        }
+    }
+
+    private static void otherwise(int state, int action) {
+        Arrays.fill(TRANSITIONS[state], (byte) action);
+    }
+
+    /**
+     * Marks {@code state} as accepting {@code type}, both before any other
+     * character and at the end of the input.
+     */
+    private static void accept(int state, Token.Type type) {
+        otherwise(state, ACCEPT);
+        ACCEPT_TYPES[state] = type;
+        acceptEof(state, type);
+    }
+
+    private static void acceptEof(int state, Token.Type type) {
+        TRANSITIONS[state][CLASS_EOF] = ACCEPT;
+        EOF_TYPES[state] = type;
+    }
+
+}
@@ -0,0 +1,67 @@
+package plc.project;
+
+/**
+ * Decodes the escape sequences of string and character literals in a single
+ * pass, which both the lexer and parser use so they agree on which escapes
+ * are valid.
+ *
+ * Each backslash is decoded together with the character after it, so an
+ * escaped backslash followed by {@code n} is a backslash and an {@code n}
+ * rather than a newline. Unknown escapes are kept as they are, since the
+ * lexer has already rejected them in lexed input.
+ */
+public final class Escapes {
+
+    private Escapes() {}
+
+    /**
+     * Returns the character represented by the escape sequence of a backslash
+     * followed by {@code c}, or {@code -1} if it is not a valid escape.
+     */
+    public static int unescape(char c) {
+        switch (c) {
+            case 'b': return '\b';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case '\'':
+            case '"':
+            case '\\':
+                return c;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Decodes the characters of {@code source} from {@code start} (inclusive)
+     * to {@code end} (exclusive). If the range has no escapes it is returned
+     * without copying through {@code builder}, which is otherwise cleared and
+     * reused to hold the decoded characters.
+     */
+    public static String decode(CharSequence source, int start, int end, StringBuilder builder) {
+        int i = start;
+        while (i < end && source.charAt(i) != '\\') {
+            i++;
+        }
+        if (i == end) {
+            return source.subSequence(start, end).toString();
+        }
+        builder.setLength(0);
+        builder.append(source, start, i);
+        while (i < end) {
+            char c = source.charAt(i++);
+            if (c == '\\' && i < end) {
+                int decoded = unescape(source.charAt(i));
+                if (decoded >= 0) {
+                    builder.append((char) decoded);
+                    i++;
+                    continue;
+                }
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,583 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A flat representation of an {@link Ast.Source}, storing its nodes in a few
+ * arrays instead of as a graph of objects, so that traversing a large source
+ * reads contiguous memory and allocates nothing.
+ *
+ * Each node is a fixed-size record of ints in one array and is identified by
+ * the index of its record, with the source as node {@code 0} and every node
+ * before its children. A record holds the node's kind, which is one of the
+ * constants of {@link Ast} or {@link #PARAMETER}, up to three fields, and the
+ * range of its child slots in a second array. An optional child has a slot
+ * holding {@code -1} when absent. Names, type names and operators are indices
+ * into a table of strings, and literals are indices into a pool of values.
+ *
+ * The fields and children of each kind are:
+ * <ul>
+ *     <li>{@link Ast#SOURCE}: the globals, then the functions.</li>
+ *     <li>{@link Ast#GLOBAL}: name, type name and mutability; the optional
+ *     value.</li>
+ *     <li>{@link Ast#FUNCTION}: name and optional return type name; the
+ *     {@link #PARAMETER}s, then the statements.</li>
+ *     <li>{@link #PARAMETER}: name and type name.</li>
+ *     <li>{@link Ast#DECLARATION}: name and optional type name; the optional
+ *     value.</li>
+ *     <li>{@link Ast#IF}: the number of then statements; the condition,
+ *     the then statements and the else statements.</li>
+ *     <li>{@link Ast#CASE}: the optional value, then the statements.</li>
+ *     <li>{@link Ast#ERROR}: message and index.</li>
+ *     <li>{@link Ast#LITERAL}: the literal.</li>
+ *     <li>{@link Ast#BINARY}: operator; the left and right operands.</li>
+ *     <li>{@link Ast#ACCESS}: name; the optional offset.</li>
+ *     <li>{@link Ast#CALL}: name; the arguments.</li>
+ *     <li>All other kinds have no fields, and their children in the order of
+ *     the arguments to their constructor.</li>
+ * </ul>
+ *
+ * Nodes are read through their index, or with a {@link Cursor} which keeps
+ * its path from the root so it can move between children, siblings and
+ * parents. {@link #walk(Visitor)} uses a cursor to visit every node. Since
+ * nodes are numbered in the order they are visited, a pass which does not
+ * need the structure around each node can instead loop over the indices.
+ */
+public final class FlatAst {
+
+    /**
+     * The kind of the nodes for the parameters of a function, which are only
+     * names in {@link Ast.Function}.
+     */
+    public static final int PARAMETER = Ast.LIST + 1;
+
+    private static final int KIND = 0;
+    private static final int FIELD = 1;
+    private static final int FIRST = 4;
+    private static final int COUNT = 5;
+    private static final int RECORD = 6;
+
+    private final int[] nodes;
+    private final int size;
+    private final int[] children;
+    private final String[] names;
+    private final Object[] literals;
+
+    private FlatAst(int[] nodes, int size, int[] children, String[] names, Object[] literals) {
+        this.nodes = nodes;
+        this.size = size;
+        this.children = children;
+        this.names = names;
+        this.literals = literals;
+    }
+
+    /**
+     * Converts {@code source}, keeping its syntax but not its spans or the
+     * annotations added by the {@link Analyzer}.
+     */
+    public static FlatAst of(Ast.Source source) {
+        Builder builder = new Builder();
+        builder.add(source);
+        return builder.build();
+    }
+
+    /**
+     * Converts this back to a new {@link Ast.Source}, equal to the one it was
+     * created from.
+     */
+    public Ast.Source toAst() {
+        return (Ast.Source) toAst(0);
+    }
+
+    /**
+     * Returns the number of nodes.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getKind(int node) {
+        return nodes[node * RECORD + KIND];
+    }
+
+    /**
+     * Returns the field {@code i} of the node, from {@code 0} to {@code 2}.
+     * Names are returned as indices of {@link #getString(int)}, and absent
+     * names as {@code -1}.
+     */
+    public int getField(int node, int i) {
+        return nodes[node * RECORD + FIELD + i];
+    }
+
+    /**
+     * Returns the number of child slots of the node, including those of
+     * absent optional children.
+     */
+    public int getChildCount(int node) {
+        return nodes[node * RECORD + COUNT];
+    }
+
+    /**
+     * Returns the child in slot {@code i} of the node, or {@code -1} if it is
+     * an absent optional child.
+     */
+    public int getChild(int node, int i) {
+        return children[nodes[node * RECORD + FIRST] + i];
+    }
+
+    public String getString(int index) {
+        return index < 0 ? null : names[index];
+    }
+
+    /**
+     * Returns the name of the node, which is its first field, such as the
+     * name of a global or the operator of a binary expression.
+     */
+    public String getName(int node) {
+        return getString(getField(node, 0));
+    }
+
+    /**
+     * Returns the type name of the node, which is its second field, or {@code
+     * null} if it has none.
+     */
+    public String getTypeName(int node) {
+        return getString(getField(node, 1));
+    }
+
+    public Object getLiteral(int node) {
+        return literals[getField(node, 0)];
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Visits every node in order with a single {@link Cursor}, calling {@link
+     * Visitor#enter(Cursor)} before the children of a node and {@link
+     * Visitor#exit(Cursor)} after them.
+     */
+    public void walk(Visitor visitor) {
+        Cursor cursor = new Cursor();
+        boolean descend = visitor.enter(cursor);
+        while (true) {
+            if (descend && cursor.firstChild()) {
+                descend = visitor.enter(cursor);
+                continue;
+            }
+            while (true) {
+                visitor.exit(cursor);
+                if (cursor.nextSibling()) {
+                    descend = visitor.enter(cursor);
+                    break;
+                } else if (!cursor.parent()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    public interface Visitor {
+
+        /**
+         * Called when the cursor enters a node, returning whether its children
+         * are visited. The cursor must be left at the same node.
+         */
+        boolean enter(Cursor cursor);
+
+        default void exit(Cursor cursor) {}
+
+    }
+
+    /**
+     * A position in the tree which remembers the path from the root, starting
+     * at the source. Moving the cursor does not allocate once its path has
+     * grown to the depth of the tree.
+     */
+    public final class Cursor {
+
+        private int[] path = new int[16];
+        private int[] positions = new int[16];
+        private int[] limits = new int[16];
+        private int depth = 0;
+
+        private Cursor() {}
+
+        public FlatAst getAst() {
+            return FlatAst.this;
+        }
+
+        public int getNode() {
+            return path[depth];
+        }
+
+        /**
+         * Returns the number of nodes above this one, which is {@code 0} for
+         * the source.
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * Returns the slot of this node within its parent.
+         */
+        public int getSlot() {
+            return depth == 0 ? 0 : positions[depth] - nodes[path[depth - 1] * RECORD + FIRST];
+        }
+
+        public int getKind() {
+            return nodes[path[depth] * RECORD + KIND];
+        }
+
+        public String getName() {
+            return FlatAst.this.getName(path[depth]);
+        }
+
+        public Object getLiteral() {
+            return FlatAst.this.getLiteral(path[depth]);
+        }
+
+        /**
+         * Moves to the first present child, returning {@code false} without
+         * moving if there is none.
+         */
+        public boolean firstChild() {
+            int record = path[depth] * RECORD;
+            int first = nodes[record + FIRST];
+            int limit = first + nodes[record + COUNT];
+            for (int position = first; position < limit; position++) {
+                if (children[position] >= 0) {
+                    if (++depth == path.length) {
+                        path = Arrays.copyOf(path, depth * 2);
+                        positions = Arrays.copyOf(positions, depth * 2);
+                        limits = Arrays.copyOf(limits, depth * 2);
+                    }
+                    path[depth] = children[position];
+                    positions[depth] = position;
+                    limits[depth] = limit;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Moves to the next present sibling, returning {@code false} without
+         * moving if there is none.
+         */
+        public boolean nextSibling() {
+            if (depth == 0) {
+                return false;
+            }
+            for (int position = positions[depth] + 1; position < limits[depth]; position++) {
+                if (children[position] >= 0) {
+                    path[depth] = children[position];
+                    positions[depth] = position;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Moves to the parent, returning {@code false} at the source.
+         */
+        public boolean parent() {
+            if (depth == 0) {
+                return false;
+            }
+            depth--;
+            return true;
+        }
+
+    }
+
+    private Ast toAst(int node) {
+        switch (getKind(node)) {
+            case Ast.SOURCE: {
+                List<Ast.Global> globals = new ArrayList<>();
+                List<Ast.Function> functions = new ArrayList<>();
+                for (int i = 0; i < getChildCount(node); i++) {
+                    Ast child = toAst(getChild(node, i));
+                    if (child instanceof Ast.Global) {
+                        globals.add((Ast.Global) child);
+                    } else {
+                        functions.add((Ast.Function) child);
+                    }
+                }
+                return new Ast.Source(globals, functions);
+            }
+            case Ast.GLOBAL:
+                return new Ast.Global(getName(node), getTypeName(node), getField(node, 2) != 0, toOptional(getChild(node, 0)));
+            case Ast.FUNCTION: {
+                List<String> parameters = new ArrayList<>();
+                List<String> parameterTypeNames = new ArrayList<>();
+                int i = 0;
+                for (; i < getChildCount(node) && getKind(getChild(node, i)) == PARAMETER; i++) {
+                    parameters.add(getName(getChild(node, i)));
+                    parameterTypeNames.add(getTypeName(getChild(node, i)));
+                }
+                return new Ast.Function(getName(node), parameters, parameterTypeNames,
+                        Optional.ofNullable(getTypeName(node)), toStatements(node, i, getChildCount(node)));
+            }
+            case Ast.EXPRESSION_STATEMENT:
+                return new Ast.Statement.Expression(toExpression(getChild(node, 0)));
+            case Ast.DECLARATION:
+                return new Ast.Statement.Declaration(getName(node), Optional.ofNullable(getTypeName(node)), toOptional(getChild(node, 0)));
+            case Ast.ASSIGNMENT:
+                return new Ast.Statement.Assignment(toExpression(getChild(node, 0)), toExpression(getChild(node, 1)));
+            case Ast.IF: {
+                int split = 1 + getField(node, 0);
+                return new Ast.Statement.If(toExpression(getChild(node, 0)),
+                        toStatements(node, 1, split), toStatements(node, split, getChildCount(node)));
+            }
+            case Ast.SWITCH: {
+                List<Ast.Statement.Case> cases = new ArrayList<>();
+                for (int i = 1; i < getChildCount(node); i++) {
+                    cases.add((Ast.Statement.Case) toAst(getChild(node, i)));
+                }
+                return new Ast.Statement.Switch(toExpression(getChild(node, 0)), cases);
+            }
+            case Ast.CASE:
+                return new Ast.Statement.Case(toOptional(getChild(node, 0)), toStatements(node, 1, getChildCount(node)));
+            case Ast.WHILE:
+                return new Ast.Statement.While(toExpression(getChild(node, 0)), toStatements(node, 1, getChildCount(node)));
+            case Ast.RETURN:
+                return new Ast.Statement.Return(toExpression(getChild(node, 0)));
+            case Ast.ERROR:
+                return new Ast.Statement.Error(getName(node), getField(node, 1));
+            case Ast.LITERAL:
+                return new Ast.Expression.Literal(getLiteral(node));
+            case Ast.GROUP:
+                return new Ast.Expression.Group(toExpression(getChild(node, 0)));
+            case Ast.BINARY:
+                return new Ast.Expression.Binary(getName(node), toExpression(getChild(node, 0)), toExpression(getChild(node, 1)));
+            case Ast.ACCESS:
+                return new Ast.Expression.Access(toOptional(getChild(node, 0)), getName(node));
+            case Ast.CALL:
+                return new Ast.Expression.Function(getName(node), toExpressions(node));
+            case Ast.LIST:
+                return new Ast.Expression.PlcList(toExpressions(node));
+            default:
+                throw new AssertionError("Invalid node kind " + getKind(node) + ".");
+        }
+    }
+
+    private Ast.Expression toExpression(int node) {
+        return (Ast.Expression) toAst(node);
+    }
+
+    private Optional<Ast.Expression> toOptional(int node) {
+        return node < 0 ? Optional.empty() : Optional.of(toExpression(node));
+    }
+
+    private List<Ast.Statement> toStatements(int node, int from, int to) {
+        List<Ast.Statement> statements = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            statements.add((Ast.Statement) toAst(getChild(node, i)));
+        }
+        return statements;
+    }
+
+    private List<Ast.Expression> toExpressions(int node) {
+        List<Ast.Expression> expressions = new ArrayList<>(getChildCount(node));
+        for (int i = 0; i < getChildCount(node); i++) {
+            expressions.add(toExpression(getChild(node, i)));
+        }
+        return expressions;
+    }
+
+    /**
+     * Adds nodes in order, reserving the child slots of each node before
+     * adding its children so that they are contiguous.
+     */
+    private static final class Builder {
+
+        private int[] nodes = new int[RECORD * 64];
+        private int size = 0;
+        private int[] children = new int[64];
+        private int slots = 0;
+        private final List<String> names = new ArrayList<>();
+        private final Map<String, Integer> indices = new HashMap<>();
+        private final List<Object> literals = new ArrayList<>();
+        private final Map<Object, Integer> pool = new HashMap<>();
+
+        private FlatAst build() {
+            return new FlatAst(Arrays.copyOf(nodes, size * RECORD), size, Arrays.copyOf(children, slots),
+                    names.toArray(new String[0]), literals.toArray());
+        }
+
+        /**
+         * Adds a node with the given fields and {@code count} child slots,
+         * returning its index. The slots start at {@link #slots} before the
+         * call.
+         */
+        private int node(int kind, int a, int b, int c, int count) {
+            if ((size + 1) * RECORD > nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+            }
+            if (slots + count > children.length) {
+                children = Arrays.copyOf(children, Math.max(children.length * 2, slots + count));
+            }
+            int record = size * RECORD;
+            nodes[record + KIND] = kind;
+            nodes[record + FIELD] = a;
+            nodes[record + FIELD + 1] = b;
+            nodes[record + FIELD + 2] = c;
+            nodes[record + FIRST] = slots;
+            nodes[record + COUNT] = count;
+            slots += count;
+            return size++;
+        }
+
+        private int name(String name) {
+            Integer index = indices.get(name);
+            if (index == null) {
+                index = names.size();
+                names.add(name);
+                indices.put(name, index);
+            }
+            return index;
+        }
+
+        private int name(Optional<String> name) {
+            return name.isPresent() ? name(name.get()) : -1;
+        }
+
+        private int literal(Object literal) {
+            Integer index = pool.get(literal);
+            if (index == null) {
+                index = literals.size();
+                literals.add(literal);
+                pool.put(literal, index);
+            }
+            return index;
+        }
+
+        private int add(Ast ast) {
+            switch (ast.getKind()) {
+                case Ast.SOURCE: {
+                    Ast.Source source = (Ast.Source) ast;
+                    List<Ast> units = new ArrayList<>(source.getGlobals());
+                    units.addAll(source.getFunctions());
+                    return addChildren(node(Ast.SOURCE, 0, 0, 0, units.size()), 0, units);
+                }
+                case Ast.GLOBAL: {
+                    Ast.Global global = (Ast.Global) ast;
+                    int node = node(Ast.GLOBAL, name(global.getName()), name(global.getTypeName()), global.getMutable() ? 1 : 0, 1);
+                    return addOptional(node, 0, global.getValue());
+                }
+                case Ast.FUNCTION: {
+                    Ast.Function function = (Ast.Function) ast;
+                    int parameters = function.getParameters().size();
+                    List<Ast.Statement> statements = function.getStatements();
+                    int node = node(Ast.FUNCTION, name(function.getName()), name(function.getReturnTypeName()), 0, parameters + statements.size());
+                    for (int i = 0; i < parameters; i++) {
+                        int parameter = node(PARAMETER, name(function.getParameters().get(i)), name(function.getParameterTypeNames().get(i)), 0, 0);
+                        children[nodes[node * RECORD + FIRST] + i] = parameter;
+                    }
+                    return addChildren(node, parameters, statements);
+                }
+                case Ast.EXPRESSION_STATEMENT:
+                    return addChild(node(Ast.EXPRESSION_STATEMENT, 0, 0, 0, 1), 0, ((Ast.Statement.Expression) ast).getExpression());
+                case Ast.DECLARATION: {
+                    Ast.Statement.Declaration declaration = (Ast.Statement.Declaration) ast;
+                    int node = node(Ast.DECLARATION, name(declaration.getName()), name(declaration.getTypeName()), 0, 1);
+                    return addOptional(node, 0, declaration.getValue());
+                }
+                case Ast.ASSIGNMENT: {
+                    Ast.Statement.Assignment assignment = (Ast.Statement.Assignment) ast;
+                    int node = node(Ast.ASSIGNMENT, 0, 0, 0, 2);
+                    addChild(node, 0, assignment.getReceiver());
+                    return addChild(node, 1, assignment.getValue());
+                }
+                case Ast.IF: {
+                    Ast.Statement.If statement = (Ast.Statement.If) ast;
+                    int then = statement.getThenStatements().size();
+                    int node = node(Ast.IF, then, 0, 0, 1 + then + statement.getElseStatements().size());
+                    addChild(node, 0, statement.getCondition());
+                    addChildren(node, 1, statement.getThenStatements());
+                    return addChildren(node, 1 + then, statement.getElseStatements());
+                }
+                case Ast.SWITCH: {
+                    Ast.Statement.Switch statement = (Ast.Statement.Switch) ast;
+                    int node = node(Ast.SWITCH, 0, 0, 0, 1 + statement.getCases().size());
+                    addChild(node, 0, statement.getCondition());
+                    return addChildren(node, 1, statement.getCases());
+                }
+                case Ast.CASE: {
+                    Ast.Statement.Case statement = (Ast.Statement.Case) ast;
+                    int node = node(Ast.CASE, 0, 0, 0, 1 + statement.getStatements().size());
+                    addOptional(node, 0, statement.getValue());
+                    return addChildren(node, 1, statement.getStatements());
+                }
+                case Ast.WHILE: {
+                    Ast.Statement.While statement = (Ast.Statement.While) ast;
+                    int node = node(Ast.WHILE, 0, 0, 0, 1 + statement.getStatements().size());
+                    addChild(node, 0, statement.getCondition());
+                    return addChildren(node, 1, statement.getStatements());
+                }
+                case Ast.RETURN:
+                    return addChild(node(Ast.RETURN, 0, 0, 0, 1), 0, ((Ast.Statement.Return) ast).getValue());
+                case Ast.ERROR: {
+                    Ast.Statement.Error error = (Ast.Statement.Error) ast;
+                    return node(Ast.ERROR, name(error.getMessage()), error.getIndex(), 0, 0);
+                }
+                case Ast.LITERAL:
+                    return node(Ast.LITERAL, literal(((Ast.Expression.Literal) ast).getLiteral()), 0, 0, 0);
+                case Ast.GROUP:
+                    return addChild(node(Ast.GROUP, 0, 0, 0, 1), 0, ((Ast.Expression.Group) ast).getExpression());
+                case Ast.BINARY: {
+                    Ast.Expression.Binary binary = (Ast.Expression.Binary) ast;
+                    int node = node(Ast.BINARY, name(binary.getOperator()), 0, 0, 2);
+                    addChild(node, 0, binary.getLeft());
+                    return addChild(node, 1, binary.getRight());
+                }
+                case Ast.ACCESS: {
+                    Ast.Expression.Access access = (Ast.Expression.Access) ast;
+                    return addOptional(node(Ast.ACCESS, name(access.getName()), 0, 0, 1), 0, access.getOffset());
+                }
+                case Ast.CALL: {
+                    Ast.Expression.Function function = (Ast.Expression.Function) ast;
+                    return addChildren(node(Ast.CALL, name(function.getName()), 0, 0, function.getArguments().size()), 0, function.getArguments());
+                }
+                case Ast.LIST: {
+                    List<Ast.Expression> values = ((Ast.Expression.PlcList) ast).getValues();
+                    return addChildren(node(Ast.LIST, 0, 0, 0, values.size()), 0, values);
+                }
+                default:
+                    throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+            }
+        }
+
+        private int addChild(int node, int slot, Ast child) {
+            int index = add(child);
+            children[nodes[node * RECORD + FIRST] + slot] = index;
+            return node;
+        }
+
+        private int addOptional(int node, int slot, Optional<Ast.Expression> child) {
+            if (child.isPresent()) {
+                return addChild(node, slot, child.get());
+            }
+            children[nodes[node * RECORD + FIRST] + slot] = -1;
+            return node;
+        }
+
+        private int addChildren(int node, int slot, List<? extends Ast> asts) {
+            for (int i = 0; i < asts.size(); i++) {
+                addChild(node, slot + i, asts.get(i));
+            }
+            return node;
+        }
+
+    }
+
+}
@@ -0,0 +1,181 @@
+package plc.project;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Keeps the tokens of a source up to date as it is edited, re-lexing only the
+ * part of the source damaged by each edit.
+ *
+ * Lexing restarts at the first token which could be affected by the edit,
+ * including the tokens just before it since {@link DfaLexer} looks up to two
+ * characters past the end of a token. It stops as soon as a new token starts
+ * after the edit at the same position as a (shifted) previous token: from
+ * there on the text is unchanged and the lexer is back in its start state, so
+ * the remaining previous tokens are reused with their indices shifted.
+ *
+ * The reused tokens are not copied. Instead the returned list is a view which
+ * shifts them as they are accessed, creating a new token on each access past
+ * the edit. After {@link #MAX_DEPTH} consecutive edits the view is flattened
+ * into a new list to keep access fast.
+ *
+ * Re-lexing only touches the damaged region, but an edit is still amortized
+ * O(n) in the size of the source with a small constant: the edited source is
+ * copied into a new string, and every {@link #MAX_DEPTH} edits all tokens are
+ * copied when the view is flattened.
+ */
+public final class IncrementalLexer {
+
+    private static final int MAX_DEPTH = 8;
+
+    private String source;
+    private List<Token> tokens;
+
+    public IncrementalLexer(String source) {
+        this(source, new DfaLexer(source).lex());
+    }
+
+    /**
+     * Creates an incremental lexer from a source and the tokens previously
+     * lexed from it.
+     */
+    public IncrementalLexer(String source, List<Token> tokens) {
+        this.source = source;
+        this.tokens = tokens;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public List<Token> getTokens() {
+        return tokens;
+    }
+
+    /**
+     * Replaces {@code removed} characters at {@code offset} with {@code
+     * inserted} and returns the updated tokens. If the edited source cannot be
+     * lexed, the {@link ParseException} is thrown and the lexer is unchanged.
+     */
+    public List<Token> edit(int offset, int removed, String inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > source.length()) {
+            throw new IndexOutOfBoundsException("Edit " + offset + "+" + removed + " is outside of the source.");
+        }
+        String edited = source.substring(0, offset) + inserted + source.substring(offset + removed);
+        tokens = relex(tokens, edited, offset, removed, inserted.length());
+        source = edited;
+        return tokens;
+    }
+
+    /**
+     * Re-lexes the tokens of a source after an edit, given the source after the
+     * edit was applied.
+     */
+    static List<Token> relex(List<Token> tokens, String source, int offset, int removed, int inserted) {
+        int delta = inserted - removed;
+        int restart = firstAffected(tokens, offset);
+        int start = restart < tokens.size() ? Math.min(tokens.get(restart).getIndex(), offset) : offset;
+        DfaLexer lexer = new DfaLexer(new Lexer.CharStream(source, start));
+        List<Token> relexed = new ArrayList<>();
+        int resume = tokens.size();
+        for (Token token = lexer.next(); token != null; token = lexer.next()) {
+            if (token.getIndex() >= offset + inserted) {
+                int match = findStart(tokens, token.getIndex() - delta);
+                if (match >= 0) {
+                    resume = match;
+                    break;
+                }
+            }
+            relexed.add(token);
+        }
+        Edited result = new Edited(tokens, restart, relexed, resume, delta);
+        return result.depth > MAX_DEPTH ? new ArrayList<>(result) : result;
+    }
+
+    /**
+     * Returns the index of the first token which ends less than two characters
+     * before {@code offset}, and may therefore lex differently after an edit
+     * at {@code offset}.
+     */
+    private static int firstAffected(List<Token> tokens, int offset) {
+        int low = 0;
+        int high = tokens.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            Token token = tokens.get(mid);
+            if (token.getIndex() + token.getLiteral().length() + 2 < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the token starting at {@code index}, or -1 if no
+     * token starts there.
+     */
+    private static int findStart(List<Token> tokens, int index) {
+        int low = 0;
+        int high = tokens.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int start = tokens.get(mid).getIndex();
+            if (start < index) {
+                low = mid + 1;
+            } else if (start > index) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A view of the tokens after an edit: the unchanged tokens before the
+     * edit, the re-lexed tokens, and the reused tokens after the edit shifted
+     * by {@code delta}.
+     */
+    private static final class Edited extends AbstractList<Token> implements RandomAccess {
+
+        private final List<Token> previous;
+        private final int prefix;
+        private final List<Token> relexed;
+        private final int resume;
+        private final int delta;
+        private final int depth;
+
+        private Edited(List<Token> previous, int prefix, List<Token> relexed, int resume, int delta) {
+            this.previous = previous;
+            this.prefix = prefix;
+            this.relexed = relexed;
+            this.resume = resume;
+            this.delta = delta;
+            this.depth = previous instanceof Edited ? ((Edited) previous).depth + 1 : 1;
+        }
+
+        @Override
+        public Token get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            } else if (index < prefix) {
+                return previous.get(index);
+            } else if (index < prefix + relexed.size()) {
+                return relexed.get(index - prefix);
+            }
+            Token token = previous.get(resume + index - prefix - relexed.size());
+            return delta == 0 ? token : new Token(token.getType(), token.getLiteral(), token.getIndex() + delta, token.getCode());
+        }
+
+        @Override
+        public int size() {
+            return prefix + relexed.size() + previous.size() - resume;
+        }
+
+    }
+
+}
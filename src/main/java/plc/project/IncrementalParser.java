@@ -0,0 +1,211 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps a source and its parsed {@link Ast.Source} up to date as the text is
+ * edited, reparsing only the global or function containing each edit.
+ *
+ * The parser remembers where each global and function starts and ends in the
+ * text. An edit which lies within a single one of them is applied by lexing
+ * and parsing just its new text, and the resulting node replaces the old one
+ * in a new {@link Ast.Source} which shares every other global and function,
+ * so the cost of an edit depends on the size of the edited unit rather than
+ * the whole source. Any other edit, or one which changes the unit into
+ * something else than a single global or function of the same kind, falls
+ * back to parsing the whole source, which gives exactly the same result.
+ *
+ * As with {@link ParseCache}, shared nodes keep annotations left by the
+ * {@link Analyzer}, so callers should not rely on those after an edit. Shared
+ * nodes also keep their spans, which are behind the text by {@link
+ * #getShift(int)} once an earlier unit has changed length.
+ */
+public final class IncrementalParser {
+
+    private String text;
+    private Ast.Source source;
+    private int globals;
+    private int[] starts;
+    private int[] ends;
+    private int[] shifts;
+    private long reparsed;
+    private long fallbacks;
+
+    public IncrementalParser(String text) throws ParseException {
+        parseAll(text);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public Ast.Source getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the number of characters to add to the spans of the nodes in
+     * the global or function at {@code unit}, counting globals first, to get
+     * their index in the current text.
+     */
+    public int getShift(int unit) {
+        return shifts[unit];
+    }
+
+    /**
+     * Returns the number of edits applied by reparsing a single unit.
+     */
+    public long getReparsed() {
+        return reparsed;
+    }
+
+    /**
+     * Returns the number of edits applied by parsing the whole source.
+     */
+    public long getFallbacks() {
+        return fallbacks;
+    }
+
+    /**
+     * Replaces the characters from {@code start} (inclusive) to {@code end}
+     * (exclusive) with {@code replacement} and returns the updated source. If
+     * the new text does not parse, the {@link ParseException} from parsing
+     * the whole source is thrown and the parser keeps its previous state.
+     */
+    public Ast.Source edit(int start, int end, String replacement) throws ParseException {
+        if (start < 0 || end < start || end > text.length()) {
+            throw new IndexOutOfBoundsException("Invalid edit " + start + ".." + end + " of " + text.length() + " characters.");
+        }
+        String edited = text.substring(0, start) + replacement + text.substring(end);
+        int unit = find(start, end);
+        if (unit >= 0 && reparse(edited, unit, replacement.length() - (end - start))) {
+            reparsed++;
+        } else {
+            parseAll(edited);
+            fallbacks++;
+        }
+        return source;
+    }
+
+    /**
+     * Returns the unit containing the characters {@code start} to {@code end},
+     * or {@code -1} if the edit is not within a single unit.
+     */
+    private int find(int start, int end) {
+        int unit = Arrays.binarySearch(starts, start);
+        if (unit < 0) {
+            unit = -unit - 2;
+        }
+        return unit >= 0 && end <= ends[unit] ? unit : -1;
+    }
+
+    /**
+     * Lexes and parses the new text of {@code unit}, which has changed length
+     * by {@code delta}, and splices it into the source. Returns {@code false}
+     * without changing anything if the new text is not a single unit of the
+     * same kind, or if it may be lexed differently within the whole text
+     * because it does not start and end next to whitespace.
+     */
+    private boolean reparse(String edited, int unit, int delta) {
+        int from = starts[unit];
+        int to = ends[unit] + delta;
+        if (from > 0 && !Character.isWhitespace(edited.charAt(from - 1))
+                || to < edited.length() && !Character.isWhitespace(edited.charAt(to))) {
+            return false;
+        }
+        TokenBuffer tokens;
+        Ast replacement;
+        try {
+            tokens = new DfaLexer(edited.substring(from, to)).lexBuffer();
+            if (tokens.size() == 0) {
+                return false;
+            }
+            int code = tokens.getCode(0);
+            boolean global = code == Symbol.LIST || code == Symbol.VAR || code == Symbol.VAL;
+            if (global != unit < this.globals || !global && code != Symbol.FUN) {
+                return false;
+            }
+            Parser parser = new Parser(tokens);
+            parser.setOrigin(from);
+            replacement = global ? parser.parseGlobal() : parser.parseFunction();
+            if (parser.position() != tokens.size()) {
+                return false;
+            }
+        } catch (ParseException e) {
+            return false;
+        }
+
+        List<Ast.Global> globals = source.getGlobals();
+        List<Ast.Function> functions = source.getFunctions();
+        if (unit < this.globals) {
+            globals = new ArrayList<>(globals);
+            globals.set(unit, (Ast.Global) replacement);
+        } else {
+            functions = new ArrayList<>(functions);
+            functions.set(unit - this.globals, (Ast.Function) replacement);
+        }
+        int last = tokens.size() - 1;
+        starts[unit] = from + tokens.getStart(0);
+        ends[unit] = from + tokens.getStart(last) + tokens.getLength(last);
+        shifts[unit] = 0;
+        for (int i = unit + 1; i < starts.length; i++) {
+            starts[i] += delta;
+            ends[i] += delta;
+            shifts[i] += delta;
+        }
+        text = edited;
+        source = new Ast.Source(globals, functions);
+        return true;
+    }
+
+    /**
+     * Parses the whole text one unit at a time, as {@link
+     * Parser#parseSource()} does, recording where each unit starts and ends.
+     */
+    private void parseAll(String text) {
+        TokenBuffer tokens = new DfaLexer(text).lexBuffer();
+        Parser parser = new Parser(tokens);
+        List<Ast.Global> globals = new ArrayList<>();
+        List<Ast.Function> functions = new ArrayList<>();
+        List<Integer> boundaries = new ArrayList<>();
+        boundaries.add(0);
+        while (isGlobal(tokens, parser.position())) {
+            globals.add(parser.parseGlobal());
+            boundaries.add(parser.position());
+        }
+        while (parser.position() < tokens.size() && tokens.getCode(parser.position()) == Symbol.FUN) {
+            functions.add(parser.parseFunction());
+            boundaries.add(parser.position());
+        }
+        if (isGlobal(tokens, parser.position())) {
+            // reports the misplaced global as parseSource does
+            new Parser(tokens).parseSource();
+        }
+
+        int units = boundaries.size() - 1;
+        int[] starts = new int[units];
+        int[] ends = new int[units];
+        for (int i = 0; i < units; i++) {
+            int last = boundaries.get(i + 1) - 1;
+            starts[i] = tokens.getStart(boundaries.get(i));
+            ends[i] = tokens.getStart(last) + tokens.getLength(last);
+        }
+        this.text = text;
+        this.source = new Ast.Source(globals, functions);
+        this.globals = globals.size();
+        this.starts = starts;
+        this.ends = ends;
+        this.shifts = new int[units];
+    }
+
+    private static boolean isGlobal(TokenBuffer tokens, int index) {
+        if (index >= tokens.size()) {
+            return false;
+        }
+        int code = tokens.getCode(index);
+        return code == Symbol.LIST || code == Symbol.VAR || code == Symbol.VAL;
+    }
+
+}
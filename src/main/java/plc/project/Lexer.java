@@ -28,6 +28,11 @@ public final class Lexer {
     public Lexer(String input) {
         chars = new CharStream(input);
     }
+
+    public Lexer(CharStream chars) {
+        this.chars = chars;
+    }
+
     /**
      * Repeatedly lexes the input using {@link #lexToken()}, also skipping over
      * whitespace where appropriate.
@@ -37,7 +42,8 @@ public final class Lexer {
         while(chars.has(0)){
 
             if (peek("[ \b\n\r\t]")){
-                chars.index++;
+                chars.advance();
+                chars.skip();
 
             } else{
                Tokens.add(lexToken());
@@ -177,7 +183,9 @@ public final class Lexer {
     }
 
     public void lexEscape() {
-        if (match("\\\\", "[bnrt'\"\\\\]")){
+        if (peek("\\\\") && chars.has(1) && Escapes.unescape(chars.get(1)) >= 0) {
+            chars.advance();
+            chars.advance();
             return;
         }
         throw new ParseException("Invalid escape", chars.index+1);
@@ -236,15 +244,53 @@ public final class Lexer {
      * You should rely on peek/match for state management in nearly all cases.
      * The only field you need to access is {@link #index} for any {@link
      * ParseException} which is thrown.
+     *
+     * Subclasses may supply characters from somewhere other than a string (see
+     * {@link ReaderCharStream}) by overriding {@link #has(int)}, {@link
+     * #get(int)} and {@link #emit(Token.Type)}.
      */
-    public static final class CharStream {
+    public static class CharStream {
 
         private final String input;
-        private int index = 0;
-        private int length = 0;
+        private final boolean views;
+        int index = 0;
+        int length = 0;
 
         public CharStream(String input) {
+            this(input, false);
+        }
+
+        /**
+         * Creates a stream which, if {@code views} is true, emits tokens whose
+         * literals are views over the input instead of copies. A view is only
+         * copied into a {@link String} when {@link Token#getLiteral()} is
+         * called, so tokens which are only checked by type or {@link Symbol}
+         * code are never copied.
+         */
+        public CharStream(String input, boolean views) {
             this.input = input;
+            this.views = views;
+        }
+
+        /**
+         * Creates a stream positioned at {@code index} of the input, for lexing
+         * part of a larger input while keeping indices relative to the whole.
+         */
+        CharStream(String input, int index) {
+            this(input, false);
+            this.index = index;
+        }
+
+        CharStream() {
+            this(null, false);
+        }
+
+        /**
+         * Returns the entire input, or {@code null} if the stream does not hold
+         * its input in memory.
+         */
+        CharSequence source() {
+            return input;
         }
 
         public boolean has(int offset) {
@@ -268,7 +314,23 @@ public final class Lexer {
         public Token emit(Token.Type type) {
             int start = index - length;
             skip();
-            return new Token(type, input.substring(start, index), start);
+            CharSequence literal = views ? new LiteralView(input, start, index) : input.substring(start, index);
+            return new Token(type, literal, start);
+        }
+
+        /**
+         * Emits the current token as the {@link Symbol} with the given code,
+         * using the symbol's canonical literal instead of copying the input,
+         * or as with {@link #emit(Token.Type)} if the code is {@link
+         * Symbol#NONE}.
+         */
+        public Token emit(Token.Type type, int code) {
+            if (code == Symbol.NONE) {
+                return emit(type);
+            }
+            int start = index - length;
+            skip();
+            return new Token(type, Symbol.literal(code), start, code);
         }
 
     }
@@ -0,0 +1,96 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * Maps character indices in a source, such as {@link ParseException#getIndex()}
+ * or {@link Ast#getStart()}, to line and column numbers, both counted from 1.
+ *
+ * The start of every line is found the first time the index is queried, by a
+ * single scan for line feeds with {@link String#indexOf(int, int)}, which the
+ * JVM compiles to vector instructions. The source is then released, so only
+ * the line starts are kept, and each query is a binary search over them. A
+ * line ends after its line feed, so in a {@code \r\n} line ending the {@code
+ * \r} is the last column of its line.
+ */
+public final class LineIndex {
+
+    private String source;
+    private final int length;
+    private volatile int[] starts;
+
+    public LineIndex(String source) {
+        this.source = source;
+        this.length = source.length();
+    }
+
+    public int getLineCount() {
+        return starts().length;
+    }
+
+    /**
+     * Returns the line containing the character at {@code index}, where the
+     * length of the source is the index of the end of the last line.
+     */
+    public int getLine(int index) {
+        checkIndex(index);
+        int line = Arrays.binarySearch(starts(), index);
+        return line >= 0 ? line + 1 : -line - 1;
+    }
+
+    public int getColumn(int index) {
+        return index - getLineStart(getLine(index)) + 1;
+    }
+
+    /**
+     * Returns the index of the first character of {@code line}.
+     */
+    public int getLineStart(int line) {
+        int[] starts = starts();
+        if (line < 1 || line > starts.length) {
+            throw new IndexOutOfBoundsException("Invalid line " + line + " of " + starts.length + ".");
+        }
+        return starts[line - 1];
+    }
+
+    /**
+     * Returns the position of {@code index} as {@code line:column}.
+     */
+    public String format(int index) {
+        int line = getLine(index);
+        return line + ":" + (index - starts()[line - 1] + 1);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index > length) {
+            throw new IndexOutOfBoundsException("Invalid index " + index + " of " + length + " characters.");
+        }
+    }
+
+    private int[] starts() {
+        int[] starts = this.starts;
+        if (starts == null) {
+            synchronized (this) {
+                starts = this.starts;
+                if (starts == null) {
+                    this.starts = starts = scan(source);
+                    source = null;
+                }
+            }
+        }
+        return starts;
+    }
+
+    private static int[] scan(String source) {
+        int[] starts = new int[Math.max(16, source.length() / 32)];
+        int lines = 1;
+        for (int index = source.indexOf('\n'); index >= 0; index = source.indexOf('\n', index + 1)) {
+            if (lines == starts.length) {
+                starts = Arrays.copyOf(starts, lines * 2);
+            }
+            starts[lines++] = index + 1;
+        }
+        return Arrays.copyOf(starts, lines);
+    }
+
+}
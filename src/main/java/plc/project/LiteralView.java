@@ -0,0 +1,39 @@
+package plc.project;
+
+/**
+ * A token literal which is a view over part of the source, copied only by
+ * {@link #toString()}.
+ */
+final class LiteralView implements CharSequence {
+
+    private final CharSequence source;
+    private final int start;
+    private final int end;
+
+    LiteralView(CharSequence source, int start, int end) {
+        this.source = source;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return source.charAt(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new LiteralView(source, this.start + start, this.start + end);
+    }
+
+    @Override
+    public String toString() {
+        return source.subSequence(start, end).toString();
+    }
+
+}
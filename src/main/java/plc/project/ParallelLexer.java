@@ -0,0 +1,110 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Lexes large inputs by splitting them into chunks which are lexed in parallel
+ * with {@link DfaLexer}, producing exactly the same tokens as lexing the input
+ * sequentially.
+ *
+ * Chunks are split at whitespace outside of string and character literals,
+ * which is found with a quick pre-scan of the input that only tracks quotes
+ * and escapes. Each chunk is lexed from its own position within the whole
+ * input, so token indices need no correction and any lookahead past the end
+ * of a chunk sees the same characters as it would sequentially. If lexing
+ * fails, the error from the earliest chunk is thrown, which is the same error
+ * sequential lexing would report.
+ */
+public final class ParallelLexer {
+
+    private static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public ParallelLexer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ParallelLexer(ForkJoinPool pool) {
+        this(pool, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize the minimum number of characters in each chunk
+     */
+    public ParallelLexer(ForkJoinPool pool, int chunkSize) {
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    public List<Token> lex(String input) {
+        int chunks = Math.min(input.length() / chunkSize, pool.getParallelism() * 4);
+        if (chunks < 2) {
+            return new DfaLexer(input).lex();
+        }
+        List<Integer> boundaries = split(input, input.length() / chunks);
+        List<ForkJoinTask<List<Token>>> tasks = new ArrayList<>();
+        for (int i = 0; i < boundaries.size() - 1; i++) {
+            int start = boundaries.get(i);
+            int end = boundaries.get(i + 1);
+            tasks.add(pool.submit(() -> new DfaLexer(new Lexer.CharStream(input, start)).lex(end)));
+        }
+        List<Token> tokens = new ArrayList<>();
+        for (ForkJoinTask<List<Token>> task : tasks) {
+            tokens.addAll(join(task));
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the start of each chunk followed by the length of the input,
+     * splitting at the first whitespace outside of a literal after every
+     * {@code size} characters.
+     */
+    static List<Integer> split(String input, int size) {
+        List<Integer> boundaries = new ArrayList<>();
+        boundaries.add(0);
+        int next = size;
+        int i = 0;
+        while (i < input.length()) {
+            char c = input.charAt(i);
+            if (c == '"') {
+                i++;
+                while (i < input.length() && (c = input.charAt(i)) != '"' && c != '\n' && c != '\r') {
+                    i += c == '\\' ? 2 : 1;
+                }
+                i++;
+            } else if (c == '\'') {
+                i += i + 1 < input.length() && input.charAt(i + 1) == '\\' ? 4 : 3;
+            } else {
+                if (i >= next && (c == ' ' || c == '\b' || c == '\t' || c == '\n' || c == '\r')) {
+                    boundaries.add(i);
+                    next = i + size;
+                }
+                i++;
+            }
+        }
+        boundaries.add(input.length());
+        return boundaries;
+    }
+
+    private static List<Token> join(ForkJoinTask<List<Token>> task) {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
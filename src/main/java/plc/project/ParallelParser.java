@@ -0,0 +1,156 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Parses sources with many functions by parsing batches of functions in
+ * parallel, producing exactly the same {@link Ast.Source} as {@link
+ * Parser#parseSource()}.
+ *
+ * The globals are parsed first, and then a quick pre-scan of the {@link
+ * Symbol} codes finds where each function ends by counting the blocks opened
+ * by {@code DO} and {@code SWITCH} and closed by {@code END}. Each batch is
+ * parsed by its own parser positioned within the whole token sequence, so
+ * lookahead past the end of a batch sees the same tokens as it would
+ * sequentially. The functions are collected in their original order.
+ *
+ * If the pre-scan and the parsers disagree on where a function ends, or if
+ * parsing fails, the source is parsed again sequentially so that the same
+ * error is reported as by {@link Parser#parseSource()}.
+ */
+public final class ParallelParser {
+
+    private static final int DEFAULT_BATCH_SIZE = 16;
+
+    private final ForkJoinPool pool;
+    private final int batchSize;
+
+    public ParallelParser() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ParallelParser(ForkJoinPool pool) {
+        this(pool, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param batchSize the minimum number of functions parsed by each task
+     */
+    public ParallelParser(ForkJoinPool pool, int batchSize) {
+        this.pool = pool;
+        this.batchSize = batchSize;
+    }
+
+    public Ast.Source parse(List<Token> tokens) {
+        return parse(index -> new Parser(tokens, index), i -> tokens.get(i).getCode(), tokens.size());
+    }
+
+    public Ast.Source parse(TokenBuffer tokens) {
+        return parse(index -> new Parser(tokens, index), tokens::getCode, tokens.size());
+    }
+
+    private Ast.Source parse(IntFunction<Parser> parsers, IntUnaryOperator codes, int size) {
+        Parser parser = parsers.apply(0);
+        List<Ast.Global> globals = parser.parseGlobals();
+        List<Integer> boundaries = split(codes, parser.position(), size);
+        if (boundaries == null) {
+            return parsers.apply(0).parseSource();
+        }
+        int functions = boundaries.size() - 1;
+        int batches = Math.min(functions / batchSize, pool.getParallelism() * 4);
+        if (batches < 2) {
+            return parsers.apply(0).parseSource();
+        }
+        List<ForkJoinTask<List<Ast.Function>>> tasks = new ArrayList<>();
+        for (int i = 0; i < batches; i++) {
+            int first = functions * i / batches;
+            int last = functions * (i + 1) / batches;
+            tasks.add(pool.submit(() -> parseBatch(parsers, boundaries, first, last)));
+        }
+        List<Ast.Function> parsed = new ArrayList<>(functions);
+        for (ForkJoinTask<List<Ast.Function>> task : tasks) {
+            List<Ast.Function> batch = join(task);
+            if (batch == null) {
+                return parsers.apply(0).parseSource();
+            }
+            parsed.addAll(batch);
+        }
+        return new Ast.Source(globals, parsed);
+    }
+
+    /**
+     * Parses the functions {@code first} (inclusive) to {@code last}
+     * (exclusive), returning {@code null} if parsing fails or a function does
+     * not end at its boundary.
+     */
+    private static List<Ast.Function> parseBatch(IntFunction<Parser> parsers, List<Integer> boundaries, int first, int last) {
+        Parser parser = parsers.apply(boundaries.get(first));
+        List<Ast.Function> functions = new ArrayList<>(last - first);
+        try {
+            for (int i = first; i < last; i++) {
+                functions.add(parser.parseFunction());
+                if (parser.position() != boundaries.get(i + 1)) {
+                    return null;
+                }
+            }
+        } catch (ParseException e) {
+            return null;
+        }
+        return functions;
+    }
+
+    /**
+     * Returns the index of the {@code FUN} token starting each function from
+     * {@code start}, followed by the index after the last function. Returns
+     * {@code null} if a function is not closed or the functions are followed
+     * by a global, which sequential parsing reports as an error.
+     */
+    static List<Integer> split(IntUnaryOperator codes, int start, int size) {
+        List<Integer> boundaries = new ArrayList<>();
+        int i = start;
+        while (i < size && codes.applyAsInt(i) == Symbol.FUN) {
+            boundaries.add(i);
+            int depth = 0;
+            while (true) {
+                if (i == size) {
+                    return null;
+                }
+                int code = codes.applyAsInt(i++);
+                if (code == Symbol.DO || code == Symbol.SWITCH) {
+                    depth++;
+                } else if (code == Symbol.END && --depth == 0) {
+                    break;
+                }
+            }
+        }
+        if (i < size) {
+            int code = codes.applyAsInt(i);
+            if (code == Symbol.LIST || code == Symbol.VAR || code == Symbol.VAL) {
+                return null;
+            }
+        }
+        boundaries.add(i);
+        return boundaries;
+    }
+
+    private static <T> T join(ForkJoinTask<T> task) {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,212 @@
+package plc.project;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches parsed sources by the SHA-256 hash of their text, so parsing an
+ * unchanged source again skips lexing and parsing entirely.
+ *
+ * Entries are kept in memory up to a fixed capacity, evicting the least
+ * recently used entry first. If a directory and a {@link Codec} are given,
+ * every parsed source is also written to the directory under its hash, and
+ * sources missing from memory are loaded from there before being parsed.
+ * Failing to read or write the directory only causes a miss.
+ *
+ * Cached sources are shared between callers. The {@link Analyzer} annotates
+ * the tree in place, so callers which analyze a cached source should not
+ * rely on annotations left by earlier analyses.
+ */
+public final class ParseCache {
+
+    /**
+     * Converts sources to and from bytes for the on-disk tier.
+     */
+    public interface Codec {
+
+        byte[] encode(Ast.Source source);
+
+        Ast.Source decode(byte[] bytes);
+
+    }
+
+    private final int capacity;
+    private final Path directory;
+    private final Codec codec;
+    private final Map<String, Ast.Source> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ParseCache(int capacity) {
+        this(capacity, null, null);
+    }
+
+    /**
+     * Creates a cache storing sources in {@code directory} using {@link
+     * AstCodec}.
+     */
+    public ParseCache(int capacity, Path directory) {
+        this(capacity, directory, new AstCodec());
+    }
+
+    public ParseCache(int capacity, Path directory, Codec codec) {
+        this.capacity = capacity;
+        this.directory = directory;
+        this.codec = codec;
+        this.entries = new LinkedHashMap<String, Ast.Source>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Ast.Source> eldest) {
+                if (size() > ParseCache.this.capacity) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+
+        };
+    }
+
+    /**
+     * Returns the parsed source for {@code source}, from memory, from disk, or
+     * by lexing and parsing it. A {@link ParseException} from parsing is
+     * thrown as usual and nothing is cached.
+     */
+    public Ast.Source parse(String source) {
+        String hash = hash(source);
+        synchronized (entries) {
+            Ast.Source cached = entries.get(hash);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        Ast.Source parsed = load(hash);
+        if (parsed != null) {
+            diskHits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            parsed = new Parser(new DfaLexer(source).lexBuffer()).parseSource();
+            store(hash, parsed);
+        }
+        synchronized (entries) {
+            entries.put(hash, parsed);
+        }
+        return parsed;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns the number of sources found in memory.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of sources missing from memory but found on disk.
+     */
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    /**
+     * Returns the number of sources which had to be parsed.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of sources evicted from memory.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the SHA-256 hash of the UTF-8 encoding of {@code source} as a
+     * hexadecimal string.
+     */
+    public static String hash(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit(b >> 4 & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Ast.Source load(String hash) {
+        if (directory == null) {
+            return null;
+        }
+        Path file = directory.resolve(hash + ".ast");
+        try {
+            return Files.exists(file) ? codec.decode(Files.readAllBytes(file)) : null;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the source to a temporary file which is then moved into place,
+     * so other processes sharing the directory never read a partial entry.
+     * Where the file system cannot move atomically the move is done plainly,
+     * and the temporary file is deleted if the entry cannot be stored.
+     */
+    private void store(String hash, Ast.Source source) {
+        if (directory == null) {
+            return;
+        }
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, hash, ".tmp");
+            Files.write(temporary, codec.encode(source));
+            Path file = directory.resolve(hash + ".ast");
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            // the entry is still cached in memory
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                    // nothing more can be done about the temporary file
+                }
+            }
+        }
+    }
+
+}
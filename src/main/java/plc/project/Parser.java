@@ -2,10 +2,14 @@ package plc.project;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * The parser takes the sequence of tokens emitted by the lexer and turns that
@@ -14,51 +18,228 @@ import java.util.Optional;
  *
  * The parser has a similar architecture to the lexer, just with {@link Token}s
  * instead of characters. As before, {@link #peek(Object...)} and {@link
- * #match(Object...)} are helpers to make the implementation easier.
+ * #match(Object...)} are helpers to make the implementation easier. The
+ * parser itself uses the overloads taking a single {@link Symbol} code or
+ * {@link Token.Type}, or a pattern precompiled with {@link #pattern(Object...)},
+ * which match without allocating.
  *
  * This type of parser is called <em>recursive descent</em>. Each rule in our
  * grammar will have it's own function, and reference to other rules correspond
  * to calling that functions.
+ *
+ * Since nesting is then bounded by the thread's stack, the parser also has a
+ * stack-safe mode (see {@link #setStackSafe(boolean)}) in which expressions
+ * and blocks are parsed by loops over an explicit stack on the heap.
+ *
+ * In lazy mode (see {@link #setLazy(boolean)}), function bodies are skipped
+ * when the source is parsed and only parsed when their statements are first
+ * requested.
+ *
+ * Finally, {@link #parseSource(List)} recovers from syntax errors to report
+ * all of them in one pass, returning the parts of the source which could be
+ * parsed.
  */
 public final class Parser {
-    interface ExpressionParser {
-        public Ast.Expression parse();
+
+    private static final int LOGICAL = 1;
+    private static final int COMPARISON = 2;
+    private static final int ADDITIVE = 3;
+    private static final int MULTIPLICATIVE = 4;
+
+    /**
+     * The precedence of each binary operator, indexed by {@link Symbol} code.
+     * Symbols which are not binary operators have a precedence of zero.
+     */
+    private static final int[] PRECEDENCE = new int[Symbol.SLASH + 1];
+
+    static {
+        PRECEDENCE[Symbol.AND] = LOGICAL;
+        PRECEDENCE[Symbol.OR] = LOGICAL;
+        PRECEDENCE[Symbol.NOT_EQUAL] = COMPARISON;
+        PRECEDENCE[Symbol.EQUAL] = COMPARISON;
+        PRECEDENCE[Symbol.GREATER] = COMPARISON;
+        PRECEDENCE[Symbol.LESS] = COMPARISON;
+        PRECEDENCE[Symbol.PLUS] = ADDITIVE;
+        PRECEDENCE[Symbol.MINUS] = ADDITIVE;
+        PRECEDENCE[Symbol.CARET] = MULTIPLICATIVE;
+        PRECEDENCE[Symbol.STAR] = MULTIPLICATIVE;
+        PRECEDENCE[Symbol.SLASH] = MULTIPLICATIVE;
     }
+
+    private static final int[] TYPE = pattern(Symbol.COLON, Token.Type.IDENTIFIER);
+    private static final int[] IDENTIFIER_COMMA = pattern(Token.Type.IDENTIFIER, Symbol.COMMA);
+    private static final int[] IMMUTABLE = pattern(Token.Type.IDENTIFIER, Symbol.COLON, Token.Type.IDENTIFIER, Symbol.ASSIGN);
+    private static final int[] PARAMETER = pattern(Token.Type.IDENTIFIER, Symbol.COLON, Token.Type.IDENTIFIER);
+    private static final int[] PARAMETER_COMMA = pattern(Token.Type.IDENTIFIER, Symbol.COLON, Token.Type.IDENTIFIER, Symbol.COMMA);
+    private static final int[] CALL = pattern(Token.Type.IDENTIFIER, Symbol.LEFT_PAREN);
+    private static final int[] INDEX = pattern(Token.Type.IDENTIFIER, Symbol.LEFT_BRACKET);
+
     String getType(){
-        if(!peek(":", Token.Type.IDENTIFIER)) throwError("missing Type");
+        if(!peek(TYPE)) throwError("missing Type");
         tokens.advance();
-        String typeName = tokens.get(0).getLiteral();
+        String typeName = tokens.getLiteral(0);
         tokens.advance();
         return typeName;
     }
     private final TokenStream tokens;
+    private final StringBuilder escapes = new StringBuilder();
+    private boolean stackSafe = false;
+    private boolean lazy = false;
+    private List<ParseException> errors = null;
+    private ParseException unwinding = null;
+    private int origin = 0;
 
     public Parser(List<Token> tokens) {
         this.tokens = new TokenStream(tokens);
     }
 
+    /**
+     * Creates a parser which pulls tokens from the iterator as they are needed,
+     * such as from {@link DfaLexer#iterator()}, so that only the tokens within
+     * the parser's lookahead are kept in memory.
+     */
+    public Parser(Iterator<Token> tokens) {
+        this.tokens = new TokenStream(tokens);
+    }
+
+    /**
+     * Creates a parser which reads tokens directly from the packed buffer,
+     * without creating {@link Token} objects.
+     */
+    public Parser(TokenBuffer tokens) {
+        this.tokens = new TokenStream(tokens);
+    }
+
+    /**
+     * Creates a parser positioned at the token {@code index} of the list, for
+     * parsing part of a larger source while seeing the same tokens around it.
+     */
+    Parser(List<Token> tokens, int index) {
+        this(tokens);
+        this.tokens.index = index;
+    }
+
+    /**
+     * Creates a parser positioned at the token {@code index} of the buffer.
+     */
+    Parser(TokenBuffer tokens, int index) {
+        this(tokens);
+        this.tokens.index = index;
+    }
+
+    /**
+     * Returns the index of the next token to be parsed.
+     */
+    int position() {
+        return tokens.index;
+    }
+
+    /**
+     * Sets the index of the first character of the tokens' text within a
+     * larger source, which is added to the span of every node, for parsing
+     * part of a source lexed on its own.
+     */
+    void setOrigin(int origin) {
+        this.origin = origin;
+    }
+
+    /**
+     * Sets whether expressions and blocks are parsed with an explicit stack
+     * instead of recursion, so that nesting depth is bounded by the heap and
+     * not the thread's stack. Both modes produce the same AST.
+     */
+    public void setStackSafe(boolean stackSafe) {
+        this.stackSafe = stackSafe;
+    }
+
+    /**
+     * Sets whether function bodies are parsed lazily. A lazy function only
+     * records its signature and where its body starts, and the body is parsed
+     * the first time {@link Ast.Function#getStatements()} is called, so errors
+     * within it are only thrown then. Bodies are always parsed immediately
+     * when tokens are pulled from an iterator, since they cannot be revisited.
+     * Lazy trees may be shared between threads, and each body is still parsed
+     * only once.
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
     /**
      * Parses the {@code source} rule.
      */
     public Ast.Source parseSource() throws ParseException {
-        List<Ast.Global> globals = new ArrayList<>();
+        List<Ast.Global> globals = parseGlobals();
         List<Ast.Function> functions = new ArrayList<>();
-        while(peek("LIST") || peek("VAR") || peek("VAL")) globals.add(parseGlobal());
-        while(peek("FUN")) functions.add(parseFunction());
-        if (peek("LIST") || peek("VAR") || peek("VAL")) throwError("Globals must come before functions");
+        while(peek(Symbol.FUN)) functions.add(parseFunction());
+        if (peek(Symbol.LIST) || peek(Symbol.VAR) || peek(Symbol.VAL)) throwError("Globals must come before functions");
         return new Ast.Source(globals, functions);
     }
 
+    /**
+     * Parses the {@code source} rule, recovering from syntax errors instead of
+     * throwing them. Each error is added to {@code errors}, and parsing resumes
+     * at the next synchronizing token (see {@link #synchronize(int)}). A
+     * statement which could not be parsed is replaced by an {@link
+     * Ast.Statement.Error}, while a global or function which could not be
+     * parsed is left out and parsing resumes at the next one. The first error
+     * is the one {@link #parseSource()} would throw. Function bodies are
+     * parsed immediately, even in lazy mode.
+     */
+    public Ast.Source parseSource(List<ParseException> errors) {
+        this.errors = errors;
+        try {
+            List<Ast.Global> globals = new ArrayList<>();
+            List<Ast.Function> functions = new ArrayList<>();
+            while (peek(Symbol.FUN) || peek(Symbol.LIST) || peek(Symbol.VAR) || peek(Symbol.VAL)) {
+                int start = tokens.index;
+                try {
+                    if (!peek(Symbol.FUN)) {
+                        if (!functions.isEmpty()) throwError("Globals must come before functions");
+                        globals.add(parseGlobal());
+                    } else {
+                        functions.add(parseFunction());
+                    }
+                } catch (ParseException e) {
+                    if (e != unwinding) {
+                        errors.add(e);
+                    }
+                    unwinding = null;
+                    if (tokens.index == start) {
+                        tokens.advance();
+                    }
+                    while (tokens.has(0) && !peek(Symbol.FUN) && !peek(Symbol.LIST) && !peek(Symbol.VAR) && !peek(Symbol.VAL)) {
+                        tokens.advance();
+                    }
+                }
+            }
+            return new Ast.Source(globals, functions);
+        } finally {
+            this.errors = null;
+            this.unwinding = null;
+        }
+    }
+
+    /**
+     * Parses the globals at the start of the {@code source} rule.
+     */
+    List<Ast.Global> parseGlobals() throws ParseException {
+        List<Ast.Global> globals = new ArrayList<>();
+        while(peek(Symbol.LIST) || peek(Symbol.VAR) || peek(Symbol.VAL)) globals.add(parseGlobal());
+        return globals;
+    }
+
     /**
      * Parses the {@code field} rule. This method should only be called if the
      * next tokens start a field, aka {@code LET}.
      */
     public Ast.Global parseGlobal() throws ParseException {
+        int start = start();
         Ast.Global val = null;
-        if(match("LIST")) val = parseList();
-        else if (match("VAR")) val = parseMutable();
-        else if (match("VAL")) val = parseImmutable();
-        if(match(";") && val != null) return val;
+        if(match(Symbol.LIST)) val = parseList();
+        else if (match(Symbol.VAR)) val = parseMutable();
+        else if (match(Symbol.VAL)) val = parseImmutable();
+        if(match(Symbol.SEMICOLON) && val != null) return span(val, start);
         throwError("Invalid Global");
         return null; //never gets here
     }
@@ -70,25 +251,26 @@ public final class Parser {
     public Ast.Global parseList() throws ParseException {
         if (!peek(Token.Type.IDENTIFIER)) throwError("Identifier Expected");;
 
-        String name = tokens.get(0).getLiteral();
+        String name = tokens.getLiteral(0);
         tokens.advance();
 
         String typeName = getType();
-        if (!match("=")) throwError("'=' Expected");
-        if (!match("[")) throwError("'[' Expected");
+        if (!match(Symbol.ASSIGN)) throwError("'=' Expected");
+        int start = start();
+        if (!match(Symbol.LEFT_BRACKET)) throwError("'[' Expected");
 
         ArrayList<Ast.Expression> values = new ArrayList<>();
 
-        while (peek(Token.Type.IDENTIFIER, ",")) {
+        while (peek(IDENTIFIER_COMMA)) {
             values.add(parseExpression());
             tokens.advance();
         }
 
         values.add(parseExpression());
 
-        if (!match("]")) throwError("'[' Expected");
+        if (!match(Symbol.RIGHT_BRACKET)) throwError("'[' Expected");
 
-        return new Ast.Global(name, typeName, true, Optional.of(new Ast.Expression.PlcList(values)));
+        return new Ast.Global(name, typeName, true, Optional.of(span(new Ast.Expression.PlcList(values), start)));
     }
 
     /**
@@ -99,12 +281,12 @@ public final class Parser {
         String name = null;
         Ast.Expression value = null;
         if (peek(Token.Type.IDENTIFIER)) {
-            name = tokens.get(0).getLiteral();
+            name = tokens.getLiteral(0);
             tokens.advance();
         }
         else throwError("Invalid Mutable");
         String typeName = getType();
-        if (match("=")) {
+        if (match(Symbol.ASSIGN)) {
             value = parseExpression();
             return new Ast.Global(name, typeName, true, Optional.of(value));
         }
@@ -119,12 +301,12 @@ public final class Parser {
     public Ast.Global parseImmutable() throws ParseException {
         String name;
         Ast.Expression value;
-        if (peek(Token.Type.IDENTIFIER,":",Token.Type.IDENTIFIER, "=")) {
-            name = tokens.get(0).getLiteral();
+        if (peek(IMMUTABLE)) {
+            name = tokens.getLiteral(0);
             tokens.advance();
             String typeName = getType();
 
-            match("=");
+            match(Symbol.ASSIGN);
             value = parseExpression();
            return new Ast.Global(name, typeName, false, Optional.of(value));
        }
@@ -137,48 +319,51 @@ public final class Parser {
      * next tokens start a method, aka {@code DEF}.
      */
     public Ast.Function parseFunction() throws ParseException {
+        int start = start();
         String name;
         String funcType = null;
         List<String> parameters = new ArrayList<>();
         List<String> parameterTypes = new ArrayList<>();
         List<Ast.Statement> statements;
 
-        if (match("FUN") && peek(Token.Type.IDENTIFIER, "(")) {
+        if (match(Symbol.FUN) && peek(CALL)) {
 
-            name = tokens.get(0).getLiteral();
-            match(Token.Type.IDENTIFIER, "(");
-            if (!match(")")) {
+            name = tokens.getLiteral(0);
+            match(CALL);
+            if (!match(Symbol.RIGHT_PAREN)) {
 
-                while (peek(Token.Type.IDENTIFIER, ":", Token.Type.IDENTIFIER, ",")) {
-                    parameters.add(tokens.get(0).getLiteral());
+                while (peek(PARAMETER_COMMA)) {
+                    parameters.add(tokens.getLiteral(0));
                     tokens.advance();
                     tokens.advance();
-                    parameterTypes.add(tokens.get(0).getLiteral());
-                    match(Token.Type.IDENTIFIER, ",");
+                    parameterTypes.add(tokens.getLiteral(0));
+                    match(IDENTIFIER_COMMA);
                 }
 
-                if (!peek(Token.Type.IDENTIFIER, ":", Token.Type.IDENTIFIER)) throwError("Invalid Function");
+                if (!peek(PARAMETER)) throwError("Invalid Function");
 
-                parameters.add(tokens.get(0).getLiteral());
+                parameters.add(tokens.getLiteral(0));
                 tokens.advance();
                 tokens.advance();
-                parameterTypes.add(tokens.get(0).getLiteral());
+                parameterTypes.add(tokens.getLiteral(0));
                 tokens.advance();
 
-                if (!match(")")) throwError("Missing function argument closing parentheses");
+                if (!match(Symbol.RIGHT_PAREN)) throwError("Missing function argument closing parentheses");
             }
-            if (match(":")){
+            if (match(Symbol.COLON)){
                 if(!peek(Token.Type.IDENTIFIER)) throwError("Invalid Function Type");
-                funcType = tokens.get(0).getLiteral();
+                funcType = tokens.getLiteral(0);
                 tokens.advance();
             }
-            if (!match("DO")) throwError("Missing DO");
+            if (!match(Symbol.DO)) throwError("Missing DO");
 
-            statements = parseBlock();
+            Supplier<List<Ast.Statement>> body = lazy && errors == null ? skipBlock() : null;
+            statements = body == null ? parseBlock() : null;
 
-            if (match("END")) {
-                if(funcType != null) return new Ast.Function(name, parameters, parameterTypes, Optional.of(funcType), statements);
-                return new Ast.Function(name, parameters, parameterTypes, Optional.empty(), statements);
+            if (match(Symbol.END)) {
+                if (body != null) return span(new Ast.Function(name, parameters, parameterTypes, Optional.ofNullable(funcType), body), start);
+                if(funcType != null) return span(new Ast.Function(name, parameters, parameterTypes, Optional.of(funcType), statements), start);
+                return span(new Ast.Function(name, parameters, parameterTypes, Optional.empty(), statements), start);
             }
 
             throwError("Missing END");
@@ -193,13 +378,118 @@ public final class Parser {
      * preceding token indicates the opening a block.
      */
     public List<Ast.Statement> parseBlock() throws ParseException {
+        if (stackSafe) {
+            return parseBlockIteratively();
+        }
         List<Ast.Statement> statements = new ArrayList<>();
 
-        while (!(peek("END") || peek("CASE") || peek("DEFAULT") || peek("ELSE"))) {
-            if (!tokens.has(0)) throwError("Missing END");
-            statements.add(parseStatement());
+        while (!endsBlock()) {
+            int start = tokens.index;
+            int offset = start();
+            try {
+                if (!tokens.has(0)) throwError("Missing END");
+                statements.add(parseStatement());
+            } catch (ParseException e) {
+                if (errors == null) throw e;
+                statements.add(span(recover(e, start), offset));
+            }
+        }
+
+        return statements;
+    }
+
+    /**
+     * Records a syntax error within a block and skips to the next
+     * synchronizing token, returning the node which replaces the statement
+     * starting at {@code start}.
+     * If the tokens run out or skipping stops at {@code FUN}, the enclosing
+     * function cannot be recovered, so the error is rethrown up to {@link
+     * #parseSource(List)} without being recorded again by the enclosing
+     * blocks.
+     */
+    private Ast.Statement.Error recover(ParseException e, int start) {
+        if (e != unwinding) {
+            errors.add(e);
+            synchronize(start);
+        }
+        if (!tokens.has(0) || peek(Symbol.FUN)) {
+            unwinding = e;
+            throw e;
+        }
+        return new Ast.Statement.Error(e.getMessage(), e.getIndex());
+    }
+
+    /**
+     * Skips tokens up to and including the next {@code ;}, or up to the next
+     * token ending a block or {@code FUN}, which are left for the enclosing
+     * rules. Skipping also stops before a statement keyword past {@code
+     * start}, since the error is then usually a missing {@code ;}. Blocks
+     * opened by {@code DO} or {@code SWITCH} while skipping are skipped up to
+     * their {@code END}, so the remaining blocks stay balanced.
+     */
+    private void synchronize(int start) {
+        int depth = 0;
+        while (tokens.has(0)) {
+            int code = tokens.getCode(0);
+            if (code == Symbol.FUN) {
+                return;
+            } else if (depth == 0) {
+                if (code == Symbol.SEMICOLON) {
+                    tokens.advance();
+                    return;
+                } else if (endsBlock()) {
+                    return;
+                } else if (tokens.index > start && (code == Symbol.LET || code == Symbol.IF || code == Symbol.WHILE
+                        || code == Symbol.SWITCH || code == Symbol.RETURN)) {
+                    return;
+                }
+            }
+            if (code == Symbol.DO || code == Symbol.SWITCH) {
+                depth++;
+            } else if (code == Symbol.END) {
+                depth--;
+            }
+            tokens.advance();
         }
+    }
 
+    /**
+     * Skips the body of a function up to its closing {@code END}, counting the
+     * blocks opened by {@code DO} and {@code SWITCH}, and returns a supplier
+     * which parses the skipped statements. Returns {@code null} without
+     * advancing if the tokens cannot be revisited or the body is not closed,
+     * in which case it is parsed immediately.
+     */
+    private Supplier<List<Ast.Statement>> skipBlock() {
+        if (tokens.source != null) {
+            return null;
+        }
+        int start = tokens.index;
+        int depth = 1;
+        while (tokens.has(0)) {
+            int code = tokens.getCode(0);
+            if (code == Symbol.DO || code == Symbol.SWITCH) {
+                depth++;
+            } else if (code == Symbol.END && --depth == 0) {
+                int end = tokens.index;
+                Parser parser = tokens.buffer != null ? new Parser(tokens.buffer, start) : new Parser(tokens.tokens, start);
+                parser.stackSafe = stackSafe;
+                parser.origin = origin;
+                return () -> parser.parseBody(end);
+            }
+            tokens.advance();
+        }
+        tokens.index = start;
+        return null;
+    }
+
+    /**
+     * Parses a function body which was skipped by {@link #skipBlock()}, which
+     * must end at the {@code END} token at index {@code end}.
+     */
+    private List<Ast.Statement> parseBody(int end) {
+        List<Ast.Statement> statements = parseBlock();
+        if (tokens.index != end) throwError("Missing END");
         return statements;
     }
 
@@ -209,30 +499,35 @@ public final class Parser {
      * statement, then it is an expression/assignment statement.
      */
     public Ast.Statement parseStatement() throws ParseException {
-        if (match("LET")) {
-            return parseDeclarationStatement();
-        } else if (match("SWITCH")) {
-           return parseSwitchStatement();
-        } else if (match("IF")) {
-            return parseIfStatement();
-        } else if (match("WHILE")) {
-            return parseWhileStatement();
-        } else if (match("RETURN")) {
-            return parseReturnStatement();
-        } else {
-            // first evaluate first expression
-            Ast.Expression firstExp = parseExpression();
-            // check if there's an equals sign
-            if (match("=")) {
-                // evaluate second expression
-                Ast.Expression secondExp = parseExpression();
-                if (match(";")) return new Ast.Statement.Assignment(firstExp, secondExp);
-            } else{
-                if (match(";")) return new Ast.Statement.Expression(firstExp);
-            }
-            throwError("Missing Semi-Colon");
-
-
+        int start = start();
+        switch (tokens.has(0) ? tokens.getCode(0) : Symbol.NONE) {
+            case Symbol.LET:
+                tokens.advance();
+                return span(parseDeclarationStatement(), start);
+            case Symbol.SWITCH:
+                tokens.advance();
+                return span(parseSwitchStatement(), start);
+            case Symbol.IF:
+                tokens.advance();
+                return span(parseIfStatement(), start);
+            case Symbol.WHILE:
+                tokens.advance();
+                return span(parseWhileStatement(), start);
+            case Symbol.RETURN:
+                tokens.advance();
+                return span(parseReturnStatement(), start);
+            default:
+                // first evaluate first expression
+                Ast.Expression firstExp = parseExpression();
+                // check if there's an equals sign
+                if (match(Symbol.ASSIGN)) {
+                    // evaluate second expression
+                    Ast.Expression secondExp = parseExpression();
+                    if (match(Symbol.SEMICOLON)) return span(new Ast.Statement.Assignment(firstExp, secondExp), start);
+                } else{
+                    if (match(Symbol.SEMICOLON)) return span(new Ast.Statement.Expression(firstExp), start);
+                }
+                throwError("Missing Semi-Colon");
         }
         return null;
     }
@@ -249,25 +544,25 @@ public final class Parser {
             throwError("Identifier needed after LET");
         }
 
-        name = tokens.get(0).getLiteral();
+        name = tokens.getLiteral(0);
         tokens.advance();
 
         Ast.Expression exp = null;
         String typeName = null;
 
-        if (match(":")) {
+        if (match(Symbol.COLON)) {
             if (!peek(Token.Type.IDENTIFIER)) {
                 throwError("Type Identifier needed after ':'");
             }
-            typeName = tokens.get(0).getLiteral();
+            typeName = tokens.getLiteral(0);
             tokens.advance();
         }
 
-        if (match("=")) {
+        if (match(Symbol.ASSIGN)) {
             exp = parseExpression();
         }
 
-        if (match(";")) {
+        if (match(Symbol.SEMICOLON)) {
             return new Ast.Statement.Declaration(name, Optional.ofNullable(typeName), Optional.ofNullable(exp));
         }
 
@@ -283,7 +578,7 @@ public final class Parser {
     public Ast.Statement.If parseIfStatement() throws ParseException {
         Ast.Expression condition = parseExpression();
 
-        if (!match("DO")) {
+        if (!match(Symbol.DO)) {
             throwError("\"DO\" Expected");
         }
 
@@ -291,11 +586,11 @@ public final class Parser {
 
         List<Ast.Statement> elseStatements = new ArrayList<>();
 
-        if (match("ELSE")) {
+        if (match(Symbol.ELSE)) {
             elseStatements = parseBlock();
         }
 
-        if (!match("END")) {
+        if (!match(Symbol.END)) {
             throwError("\"END\" Expected");
         }
 
@@ -312,13 +607,13 @@ public final class Parser {
 
         ArrayList<Ast.Statement.Case> cases = new ArrayList<>();
 
-        while (peek("CASE")) {
+        while (peek(Symbol.CASE)) {
             cases.add(parseCaseStatement());
         }
 
         cases.add(parseCaseStatement());
 
-        if (!match("END")) {
+        if (!match(Symbol.END)) {
             throwError("\"END\" Expected");
         }
 
@@ -331,20 +626,20 @@ public final class Parser {
      * default block of a switch statement, aka {@code CASE} or {@code DEFAULT}.
      */
     public Ast.Statement.Case parseCaseStatement() throws ParseException {
-
-        if (match("CASE")) {
+        int start = start();
+        if (match(Symbol.CASE)) {
             Ast.Expression condition = parseExpression();
 
-            if (!match(":")) {
+            if (!match(Symbol.COLON)) {
                 throwError("':' Expected");
             }
 
-            return new Ast.Statement.Case(Optional.of(condition), parseBlock());
+            return span(new Ast.Statement.Case(Optional.of(condition), parseBlock()), start);
         } else {
-            if (!match("DEFAULT")) {
+            if (!match(Symbol.DEFAULT)) {
                 throwError("DEFAULT Expected");
             }
-            return new Ast.Statement.Case(Optional.empty(), parseBlock());
+            return span(new Ast.Statement.Case(Optional.empty(), parseBlock()), start);
         }
     }
 
@@ -356,13 +651,13 @@ public final class Parser {
     public Ast.Statement.While parseWhileStatement() throws ParseException {
         Ast.Expression condition = parseExpression();
 
-        if (!match("DO")) {
+        if (!match(Symbol.DO)) {
             throwError("\"DO\" Expected");
         }
 
         List<Ast.Statement> statements = parseBlock();
 
-        if (!match("END")) {
+        if (!match(Symbol.END)) {
             throwError("\"END\" Expected");
         }
 
@@ -377,7 +672,7 @@ public final class Parser {
     public Ast.Statement.Return parseReturnStatement() throws ParseException {
         Ast.Expression value = parseExpression();
 
-        if (!match(";")) {
+        if (!match(Symbol.SEMICOLON)) {
             throwError("Missing Semi-Colon");
         }
 
@@ -388,6 +683,9 @@ public final class Parser {
      * Parses the {@code expression} rule.
      */
     public Ast.Expression parseExpression(){
+        if (stackSafe) {
+            return parseExpressionIteratively();
+        }
         return parseLogicalExpression();
     }
 
@@ -395,28 +693,28 @@ public final class Parser {
      * Parses the {@code logical-expression} rule.
      */
     public Ast.Expression parseLogicalExpression() {
-        return parseRulesForBinaryExpressions(this::parseComparisonExpression, new String[]{"&&", "||"}, new String[]{});
+        return parseBinaryExpression(LOGICAL);
     }
 
     /**
      * Parses the {@code equality-expression} rule.
      */
     public Ast.Expression parseComparisonExpression() {
-        return parseRulesForBinaryExpressions(this::parseAdditiveExpression, new String[]{"!=", "==", ">", "<"}, new String[]{"&&", "||"});
+        return parseBinaryExpression(COMPARISON);
     }
 
     /**
      * Parses the {@code additive-expression} rule.
      */
     public Ast.Expression parseAdditiveExpression(){
-        return parseRulesForBinaryExpressions(this::parseMultiplicativeExpression, new String[]{"+", "-"}, new String[]{"&&", "||", "!=", "==", ">", "<"});
+        return parseBinaryExpression(ADDITIVE);
     }
 
     /**
      * Parses the {@code multiplicative-expression} rule.
      */
     public Ast.Expression parseMultiplicativeExpression() throws ParseException {
-        return parseRulesForBinaryExpressions(this::parsePrimaryExpression, new String[]{"^", "*", "/"}, new String[]{"&&", "||", "!=", "==", ">", "<", "+", "-"});
+        return parseBinaryExpression(MULTIPLICATIVE);
     }
 
     /**
@@ -426,79 +724,80 @@ public final class Parser {
      * not strictly necessary.
      */
     public Ast.Expression parsePrimaryExpression() throws ParseException {
-        if (peek("NIL")) {
+        int start = start();
+        if (peek(Symbol.NIL)) {
             tokens.advance();
-            return new Ast.Expression.Literal(null);
+            return span(new Ast.Expression.Literal(null), start);
 
-        } else if (peek("TRUE")) {
+        } else if (peek(Symbol.TRUE)) {
 
             Ast.Expression.Literal val = new Ast.Expression.Literal(Boolean.TRUE);
             tokens.advance();
-            return val;
+            return span(val, start);
 
-        } else if (peek("FALSE")) {
+        } else if (peek(Symbol.FALSE)) {
             Ast.Expression.Literal val = new Ast.Expression.Literal(Boolean.FALSE);
             tokens.advance();
-            return val;
+            return span(val, start);
 
         } else if (peek(Token.Type.INTEGER)) {
 
-            BigInteger i = new BigInteger(tokens.get(0).getLiteral());
+            BigInteger i = new BigInteger(tokens.getLiteral(0));
             tokens.advance();
-            return new Ast.Expression.Literal(i);
+            return span(new Ast.Expression.Literal(i), start);
 
         } else if (peek(Token.Type.DECIMAL)) {
 
-            BigDecimal d = new BigDecimal(tokens.get(0).getLiteral());
+            BigDecimal d = new BigDecimal(tokens.getLiteral(0));
             tokens.advance();
-            return new Ast.Expression.Literal(d);
+            return span(new Ast.Expression.Literal(d), start);
 
         } else if (peek(Token.Type.CHARACTER)) {
 
-            char c = replaceEscaped(tokens.get(0).getLiteral()).charAt(1); // use 1 because literal is in format 'c'
+            String literal = tokens.getLiteral(0);
+            char c = Escapes.decode(literal, 1, literal.length() - 1, escapes).charAt(0); // literal is in format 'c'
             tokens.advance();
-            return new Ast.Expression.Literal(c);
+            return span(new Ast.Expression.Literal(c), start);
 
         } else if (peek(Token.Type.STRING)) {
 
-            String s = tokens.get(0).getLiteral();
-            s = s.substring(1, s.length() - 1); // trim double quotes
-            s = replaceEscaped(s);
+            String s = tokens.getLiteral(0);
+            s = Escapes.decode(s, 1, s.length() - 1, escapes); // trim double quotes
 
             tokens.advance();
-            return new Ast.Expression.Literal(s);
+            return span(new Ast.Expression.Literal(s), start);
 
-        } else if(match("(")) {
+        } else if(match(Symbol.LEFT_PAREN)) {
             Ast.Expression val = parseExpression();
-            if (match(")"))  {
-                return new Ast.Expression.Group(val);
+            if (match(Symbol.RIGHT_PAREN))  {
+                return span(new Ast.Expression.Group(val), start);
             } else {
                 throwError("Missing closing parenthesis");
             }
 
 
         } else if (peek(Token.Type.IDENTIFIER)){
-            Ast.Expression.Access val = new Ast.Expression.Access(Optional.empty(),tokens.get(0).getLiteral());
+            Ast.Expression.Access val = new Ast.Expression.Access(Optional.empty(),tokens.getLiteral(0));
             Ast.Expression index = null;
             tokens.advance();
-            if (match("(")){
+            if (match(Symbol.LEFT_PAREN)){
                 List<Ast.Expression> args = new ArrayList<>();
-                if(match(")")) return new Ast.Expression.Function(val.getName(), args);
+                if(match(Symbol.RIGHT_PAREN)) return span(new Ast.Expression.Function(val.getName(), args), start);
                     while (tokens.has(0)) {
                         args.add(parseExpression());
-                        if(!match(",")){
-                            if(match(")"))return new Ast.Expression.Function(val.getName(), args);
+                        if(!match(Symbol.COMMA)){
+                            if(match(Symbol.RIGHT_PAREN))return span(new Ast.Expression.Function(val.getName(), args), start);
                             throwError("Invalid Arguments");
                         }
                     }
 
 
-            } else if (match("[")){
+            } else if (match(Symbol.LEFT_BRACKET)){
                 index = parseExpression();
-                if(match("]")) return new Ast.Expression.Access(Optional.of(index), val.getName());
+                if(match(Symbol.RIGHT_BRACKET)) return span(new Ast.Expression.Access(Optional.of(index), val.getName()), start);
                 throwError("']' Expected");
             }
-            return val;
+            return span(val, start);
         }
         throwError("Invalid Expression");
         return null; //wont get here
@@ -507,86 +806,297 @@ public final class Parser {
     private void throwError(String errorMsg) {
 
         if(tokens.has(0)) {
-            throw new ParseException("Invalid expression", tokens.get(0).getIndex());
+            throw new ParseException("Invalid expression", tokens.getIndex(0));
         }
-        throw new ParseException(errorMsg, tokens.get(-1).getIndex()+ tokens.get(-1).getLiteral().length());
+        throw new ParseException(errorMsg, tokens.getIndex(-1)+ tokens.getLiteral(-1).length());
     }
 
     /**
-     * Returns the expression for rules for binary expressions (parseLogicalExpression, parseAdditiveExpression, etc)
-     *
-     * @param next the next expression parser function
-     * @param operators the operators of the current rule
-     * @param lowerOperators the lower precedent operators of the current rule
-     * @return the expression
-     */
-    private Ast.Expression parseRulesForBinaryExpressions(ExpressionParser next, String[] operators, String[] lowerOperators) {
-        Ast.Expression exp = next.parse();
-        // check if there's an operator
-        for (String operator : operators) {
-            if (match(operator)) {
-                if (!tokens.has(0)) throwError("Missing right operand");
-                Ast.Expression right = parseExpression();
-
-                if (right instanceof Ast.Expression.Binary) {
-                    String rightOperator = ((Ast.Expression.Binary) right).getOperator();
-                    Ast.Expression rightRight = ((Ast.Expression.Binary) right).getRight();
-                    Ast.Expression rightLeft = ((Ast.Expression.Binary) right).getLeft();
-                    // merge operator arrays
-                    List<String> equalOrLowerPriority = new ArrayList<>(Arrays.asList(operators));
-                    equalOrLowerPriority.addAll(Arrays.asList(lowerOperators));
-
-                    for (String o : equalOrLowerPriority) { // if right operator is of equal or lower priority
-                        if (rightOperator.equals(o)) {
-                            Ast.Expression.Binary left = new Ast.Expression.Binary(operator, exp, rightLeft);
-                            return new Ast.Expression.Binary(rightOperator, left, rightRight);
+     * Returns the index of the first character of the next token, or of the
+     * end of the last token if there are none left.
+     */
+    private int start() {
+        if (tokens.has(0)) {
+            return tokens.getIndex(0);
+        }
+        return tokens.index > 0 ? tokens.getEnd(-1) : 0;
+    }
+
+    /**
+     * Sets the span of {@code ast} from the character {@code start} to the
+     * end of the last token parsed, and returns it.
+     */
+    private <T extends Ast> T span(T ast, int start) {
+        ast.setSpan(origin + start, origin + tokens.getEnd(-1));
+        return ast;
+    }
+
+    /**
+     * Creates the binary expression for the operator {@code code}, which
+     * spans from its left operand to its right operand.
+     */
+    private static Ast.Expression binary(int code, Ast.Expression left, Ast.Expression right) {
+        Ast.Expression binary = new Ast.Expression.Binary(Symbol.literal(code), left, right);
+        binary.setSpan(left.getStart(), right.getEnd());
+        return binary;
+    }
+
+    /**
+     * Parses a chain of binary operators with a precedence of at least {@code
+     * minPrecedence} by precedence climbing. Operators of the same precedence
+     * are folded into the left operand as they are read, so chains are left
+     * associative, and only an operator of higher precedence recurses to parse
+     * its right operand. The recursion is therefore bounded by the number of
+     * precedence levels instead of the length of the chain.
+     */
+    private Ast.Expression parseBinaryExpression(int minPrecedence) {
+        Ast.Expression left = parsePrimaryExpression();
+        while (tokens.has(0)) {
+            int code = tokens.getCode(0);
+            int precedence = code < PRECEDENCE.length ? PRECEDENCE[code] : 0;
+            if (precedence < minPrecedence) {
+                break;
+            }
+            tokens.advance();
+            if (!tokens.has(0)) throwError("Missing right operand");
+            Ast.Expression right = parseBinaryExpression(precedence + 1);
+            left = binary(code, left, right);
+        }
+        return left;
+    }
+
+    /**
+     * Parses a block as {@link #parseBlock()} does, but keeps the if, while
+     * and switch statements which are still open in a {@link BlockFrame} on
+     * an explicit stack instead of recursing into them. Other statements do
+     * not contain blocks and are parsed with {@link #parseStatement()}.
+     */
+    private List<Ast.Statement> parseBlockIteratively() {
+        Deque<BlockFrame> frames = new ArrayDeque<>();
+        BlockFrame frame = new BlockFrame(BlockFrame.ROOT, null, -1);
+        while (true) {
+            BlockFrame current = frame;
+            int depth = frames.size();
+            int start = tokens.index;
+            int offset = start();
+            boolean closing = endsBlock();
+            try {
+                if (!closing) {
+                    if (!tokens.has(0)) throwError("Missing END");
+                    int code = tokens.getCode(0);
+                    if (code == Symbol.IF || code == Symbol.WHILE) {
+                        tokens.advance();
+                        Ast.Expression condition = parseExpression();
+                        if (!match(Symbol.DO)) {
+                            throwError("\"DO\" Expected");
                         }
+                        frames.push(frame);
+                        frame = new BlockFrame(code == Symbol.IF ? BlockFrame.IF : BlockFrame.WHILE, condition, offset);
+                    } else if (code == Symbol.SWITCH) {
+                        tokens.advance();
+                        frames.push(frame);
+                        frame = new BlockFrame(BlockFrame.SWITCH, parseExpression(), offset);
+                        openCase(frame);
+                    } else {
+                        frame.statements.add(parseStatement());
                     }
+                    continue;
                 }
 
-                return new Ast.Expression.Binary(operator, exp, right);
+                Ast.Statement statement;
+                switch (frame.kind) {
+                    case BlockFrame.ROOT:
+                        return frame.statements;
+                    case BlockFrame.IF:
+                        if (frame.thenStatements == null && match(Symbol.ELSE)) {
+                            frame.thenStatements = frame.statements;
+                            frame.statements = new ArrayList<>();
+                            continue;
+                        }
+                        if (!match(Symbol.END)) {
+                            throwError("\"END\" Expected");
+                        }
+                        statement = frame.thenStatements == null
+                                ? new Ast.Statement.If(frame.condition, frame.statements, new ArrayList<>())
+                                : new Ast.Statement.If(frame.condition, frame.thenStatements, frame.statements);
+                        span(statement, frame.start);
+                        break;
+                    case BlockFrame.WHILE:
+                        if (!match(Symbol.END)) {
+                            throwError("\"END\" Expected");
+                        }
+                        statement = span(new Ast.Statement.While(frame.condition, frame.statements), frame.start);
+                        break;
+                    default:
+                        frame.cases.add(span(new Ast.Statement.Case(frame.caseValue, frame.statements), frame.caseStart));
+                        if (frame.caseValue.isPresent()) {
+                            frame.statements = new ArrayList<>();
+                            openCase(frame);
+                            continue;
+                        }
+                        if (!match(Symbol.END)) {
+                            throwError("\"END\" Expected");
+                        }
+                        statement = span(new Ast.Statement.Switch(frame.condition, frame.cases), frame.start);
+                        break;
+                }
+                frame = frames.pop();
+                frame.statements.add(statement);
+            } catch (ParseException e) {
+                if (errors == null) throw e;
+                // as with recursion, an error closing a statement belongs to
+                // the enclosing block, and one opening a statement to this one
+                Ast.Statement.Error error = span(recover(e, start), closing ? current.start : offset);
+                while (frames.size() > depth) {
+                    frames.pop();
+                }
+                frame = closing ? frames.pop() : current;
+                frame.statements.add(error);
             }
         }
+    }
 
-        return exp;
+    /**
+     * Parses the header of the next case or default block of the switch in
+     * {@code frame}, as {@link #parseCaseStatement()} does before its block.
+     */
+    private void openCase(BlockFrame frame) {
+        frame.caseStart = start();
+        if (match(Symbol.CASE)) {
+            Ast.Expression value = parseExpression();
+            if (!match(Symbol.COLON)) {
+                throwError("':' Expected");
+            }
+            frame.caseValue = Optional.of(value);
+        } else {
+            if (!match(Symbol.DEFAULT)) {
+                throwError("DEFAULT Expected");
+            }
+            frame.caseValue = Optional.empty();
+        }
     }
 
     /**
-     * Replaces all escaped with characters in a string with the actual char
-     * @param s the string whose characters are to be replaced
-     * @return the string with escaped sequences replaced with the actual corresponding char
+     * Parses an expression as {@link #parseExpression()} does, but without
+     * recursion. Operands and operators are kept on stacks and reduced by
+     * precedence, while groups, function arguments and access offsets which
+     * are still open are kept in an {@link ExpressionFrame}. Leaf expressions
+     * are parsed with {@link #parsePrimaryExpression()}, which only recurses
+     * for the cases handled here.
      */
-    private String replaceEscaped(String s) {
-        s = s.replaceAll("\\\\b", "\b");
-        s = s.replaceAll("\\\\r", "\r");
-        s = s.replaceAll("\\\\n", "\n");
-        s = s.replaceAll("\\\\t", "\t");
-        s = s.replaceAll("\\\\'", "'");
-        s = s.replaceAll("\\\\\"", "\"");
-        s = s.replaceAll("\\\\\\\\", "\\\\");
-        return s;
+    private Ast.Expression parseExpressionIteratively() {
+        Deque<Ast.Expression> operands = new ArrayDeque<>();
+        int[] operators = new int[16];
+        int size = 0;
+        Deque<ExpressionFrame> frames = new ArrayDeque<>();
+        int base = 0;
+        while (true) {
+            Ast.Expression operand = null;
+            int start = start();
+            if (match(Symbol.LEFT_PAREN)) {
+                frames.push(new ExpressionFrame(ExpressionFrame.GROUP, null, base, start));
+                base = size;
+                continue;
+            } else if (peek(Symbol.NIL) || peek(Symbol.TRUE) || peek(Symbol.FALSE)) {
+                // keyword literals lex as identifiers, so they must not open a call or access
+                operand = parsePrimaryExpression();
+            } else if (peek(CALL)) {
+                String name = tokens.getLiteral(0);
+                match(CALL);
+                if (match(Symbol.RIGHT_PAREN)) {
+                    operand = span(new Ast.Expression.Function(name, new ArrayList<>()), start);
+                } else {
+                    frames.push(new ExpressionFrame(ExpressionFrame.CALL, name, base, start));
+                    base = size;
+                    continue;
+                }
+            } else if (peek(INDEX)) {
+                String name = tokens.getLiteral(0);
+                match(INDEX);
+                frames.push(new ExpressionFrame(ExpressionFrame.INDEX, name, base, start));
+                base = size;
+                continue;
+            } else {
+                operand = parsePrimaryExpression();
+            }
+
+            // the operand is complete; read operators and close frames until
+            // another operand is expected
+            while (true) {
+                int code = tokens.has(0) ? tokens.getCode(0) : Symbol.NONE;
+                int precedence = code < PRECEDENCE.length ? PRECEDENCE[code] : 0;
+                if (precedence > 0) {
+                    while (size > base && PRECEDENCE[operators[size - 1]] >= precedence) {
+                        operand = binary(operators[--size], operands.pop(), operand);
+                    }
+                    operands.push(operand);
+                    if (size == operators.length) {
+                        operators = Arrays.copyOf(operators, size * 2);
+                    }
+                    operators[size++] = code;
+                    tokens.advance();
+                    if (!tokens.has(0)) throwError("Missing right operand");
+                    break;
+                }
+                while (size > base) {
+                    operand = binary(operators[--size], operands.pop(), operand);
+                }
+                if (frames.isEmpty()) {
+                    return operand;
+                }
+                ExpressionFrame frame = frames.peek();
+                if (frame.kind == ExpressionFrame.GROUP) {
+                    if (!match(Symbol.RIGHT_PAREN)) {
+                        throwError("Missing closing parenthesis");
+                    }
+                    operand = span(new Ast.Expression.Group(operand), frame.start);
+                } else if (frame.kind == ExpressionFrame.CALL) {
+                    frame.arguments.add(operand);
+                    if (match(Symbol.COMMA)) {
+                        break;
+                    } else if (!match(Symbol.RIGHT_PAREN)) {
+                        throwError("Invalid Arguments");
+                    }
+                    operand = span(new Ast.Expression.Function(frame.name, frame.arguments), frame.start);
+                } else {
+                    if (!match(Symbol.RIGHT_BRACKET)) {
+                        throwError("']' Expected");
+                    }
+                    operand = span(new Ast.Expression.Access(Optional.of(operand), frame.name), frame.start);
+                }
+                frames.pop();
+                base = frame.base;
+            }
+        }
     }
 
     /**
      * As in the lexer, returns {@code true} if the current sequence of tokens
      * matches the given patterns. Unlike the lexer, the pattern is not a regex;
      * instead it is either a {@link Token.Type}, which matches if the token's
-     * type is the same, or a {@link String}, which matches if the token's
+     * type is the same, a {@link Symbol} code, which matches if the token's
+     * code is the same, or a {@link String}, which matches if the token's
      * literal is the same.
      *
      * In other words, {@code Token(IDENTIFIER, "literal")} is matched by both
-     * {@code peek(Token.Type.IDENTIFIER)} and {@code peek("literal")}.
+     * {@code peek(Token.Type.IDENTIFIER)} and {@code peek("literal")}, and
+     * {@code Token(IDENTIFIER, "LET")} is also matched by {@code
+     * peek(Symbol.LET)}.
      */
     private boolean peek(Object... patterns) {
         for (int i = 0; i < patterns.length; i++) {
             if (!tokens.has(i)) {
                 return false;
             } else if (patterns[i] instanceof Token.Type) {
-                if (patterns[i] != tokens.get(i).getType()) {
+                if (patterns[i] != tokens.getType(i)) {
+                    return false;
+                }
+            } else if (patterns[i] instanceof Integer) {
+                if ((Integer) patterns[i] != tokens.getCode(i)) {
                     return false;
                 }
             } else if (patterns[i] instanceof String) {
-                if (!patterns[i].equals(tokens.get(i).getLiteral())) {
+                if (!tokens.literalEquals(i, (String) patterns[i])) {
                     return false;
                 }
             } else {
@@ -612,27 +1122,228 @@ public final class Parser {
         return peek;
     }
 
+    /**
+     * Returns {@code true} if the current token has the {@link Symbol} code
+     * {@code code}, as {@code peek((Object) code)} would without allocating.
+     */
+    private boolean peek(int code) {
+        return tokens.has(0) && tokens.getCode(0) == code;
+    }
+
+    private boolean peek(Token.Type type) {
+        return tokens.has(0) && tokens.getType(0) == type;
+    }
+
+    /**
+     * Returns {@code true} if the current sequence of tokens matches a pattern
+     * compiled by {@link #pattern(Object...)}.
+     */
+    private boolean peek(int[] pattern) {
+        for (int i = 0; i < pattern.length; i++) {
+            if (!tokens.has(i)) {
+                return false;
+            } else if (pattern[i] < 0 ? tokens.getType(i).ordinal() != ~pattern[i] : tokens.getCode(i) != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean match(int code) {
+        boolean peek = peek(code);
+        if (peek) {
+            tokens.advance();
+        }
+        return peek;
+    }
+
+    private boolean match(int[] pattern) {
+        boolean peek = peek(pattern);
+        if (peek) {
+            for (int i = 0; i < pattern.length; i++) {
+                tokens.advance();
+            }
+        }
+        return peek;
+    }
+
+    /**
+     * Returns {@code true} if the current token ends a block, which is checked
+     * by {@link #parseBlock()} before every statement.
+     */
+    private boolean endsBlock() {
+        if (!tokens.has(0)) {
+            return false;
+        }
+        int code = tokens.getCode(0);
+        return code == Symbol.END || code == Symbol.CASE || code == Symbol.DEFAULT || code == Symbol.ELSE;
+    }
+
+    /**
+     * Compiles a sequence of {@link Token.Type}s and {@link Symbol} codes into
+     * a pattern for {@link #peek(int[])}, with each type stored as the
+     * complement of its ordinal.
+     */
+    private static int[] pattern(Object... patterns) {
+        int[] pattern = new int[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            pattern[i] = patterns[i] instanceof Token.Type ? ~((Token.Type) patterns[i]).ordinal() : (Integer) patterns[i];
+        }
+        return pattern;
+    }
+
+    /**
+     * A block which is still open in {@link #parseBlockIteratively()}, along
+     * with the parts of its statement parsed so far and the index of its
+     * first character. For an if statement, {@link #thenStatements} is set
+     * once {@code ELSE} is reached, and for a switch, {@link #statements}
+     * holds the block of the current case, which starts at {@link
+     * #caseStart}.
+     */
+    private static final class BlockFrame {
+
+        private static final int ROOT = 0;
+        private static final int IF = 1;
+        private static final int WHILE = 2;
+        private static final int SWITCH = 3;
+
+        private final int kind;
+        private final Ast.Expression condition;
+        private final int start;
+        private List<Ast.Statement> statements = new ArrayList<>();
+        private List<Ast.Statement> thenStatements;
+        private final List<Ast.Statement.Case> cases;
+        private Optional<Ast.Expression> caseValue;
+        private int caseStart;
+
+        private BlockFrame(int kind, Ast.Expression condition, int start) {
+            this.kind = kind;
+            this.condition = condition;
+            this.start = start;
+            this.cases = kind == SWITCH ? new ArrayList<>() : null;
+        }
+    }
+
+    /**
+     * A group, function call or access offset which is still open in {@link
+     * #parseExpressionIteratively()}. The frame saves the operator stack base
+     * of the enclosing expression, which is restored when the frame closes,
+     * and the index of its first character.
+     */
+    private static final class ExpressionFrame {
+
+        private static final int GROUP = 0;
+        private static final int CALL = 1;
+        private static final int INDEX = 2;
+
+        private final int kind;
+        private final String name;
+        private final int base;
+        private final int start;
+        private final List<Ast.Expression> arguments;
+
+        private ExpressionFrame(int kind, String name, int base, int start) {
+            this.kind = kind;
+            this.name = name;
+            this.base = base;
+            this.start = start;
+            this.arguments = kind == CALL ? new ArrayList<>() : null;
+        }
+    }
+
+    /**
+     * The tokens being parsed, either from a complete list, a packed {@link
+     * TokenBuffer}, or pulled lazily from an iterator. In the latter case,
+     * tokens behind the current one are discarded once more than {@link
+     * #WINDOW} have accumulated, keeping only the previous token which is
+     * needed for error reporting.
+     */
     private static final class TokenStream {
 
+        private static final int WINDOW = 64;
+
         private final List<Token> tokens;
+        private final Iterator<Token> source;
+        private final TokenBuffer buffer;
+        private int base = 0;
         private int index = 0;
 
         private TokenStream(List<Token> tokens) {
             this.tokens = tokens;
+            this.source = null;
+            this.buffer = null;
+        }
+
+        private TokenStream(Iterator<Token> source) {
+            this.tokens = new ArrayList<>();
+            this.source = source;
+            this.buffer = null;
+        }
+
+        private TokenStream(TokenBuffer buffer) {
+            this.tokens = null;
+            this.source = null;
+            this.buffer = buffer;
         }
 
         /**
          * Returns true if there is a token at index + offset.
          */
         public boolean has(int offset) {
-            return index + offset < tokens.size();
+            if (buffer != null) {
+                return index + offset < buffer.size();
+            }
+            while (source != null && index + offset - base >= tokens.size() && source.hasNext()) {
+                tokens.add(source.next());
+            }
+            return index + offset - base < tokens.size();
         }
 
         /**
          * Gets the token at index + offset.
          */
         public Token get(int offset) {
-            return tokens.get(index + offset);
+            if (buffer != null) {
+                return buffer.get(index + offset);
+            }
+            has(offset);
+            return tokens.get(index + offset - base);
+        }
+
+        public Token.Type getType(int offset) {
+            return buffer != null ? buffer.getType(index + offset) : get(offset).getType();
+        }
+
+        public String getLiteral(int offset) {
+            return buffer != null ? buffer.getLiteral(index + offset) : get(offset).getLiteral();
+        }
+
+        public int getCode(int offset) {
+            return buffer != null ? buffer.getCode(index + offset) : get(offset).getCode();
+        }
+
+        public int getIndex(int offset) {
+            return buffer != null ? buffer.getStart(index + offset) : get(offset).getIndex();
+        }
+
+        /**
+         * Returns the index after the last character of the token at index +
+         * offset.
+         */
+        public int getEnd(int offset) {
+            if (buffer != null) {
+                return buffer.getStart(index + offset) + buffer.getLength(index + offset);
+            }
+            Token token = get(offset);
+            return token.getIndex() + token.getLength();
+        }
+
+        /**
+         * Returns true if the literal of the token at index + offset is equal
+         * to {@code literal}.
+         */
+        public boolean literalEquals(int offset, String literal) {
+            return buffer != null ? buffer.literalEquals(index + offset, literal) : get(offset).literalEquals(literal);
         }
 
         /**
@@ -640,8 +1351,12 @@ public final class Parser {
          */
         public void advance() {
             index++;
+            if (source != null && index - base > WINDOW) {
+                int discarded = Math.min(index - 1 - base, tokens.size());
+                tokens.subList(0, discarded).clear();
+                base += discarded;
+            }
         }
-
     }
 
 }
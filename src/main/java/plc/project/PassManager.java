@@ -0,0 +1,158 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs an ordered list of passes over a source, such as optimizations run
+ * before the {@link Interpreter} or {@link Generator}, each transforming the
+ * source returned by the previous one.
+ *
+ * A pass signals that it changed nothing by returning the source it was
+ * given, as an {@link AstRewriter} does, so changes are detected by identity
+ * without comparing trees. By default the passes run once. With a maximum of
+ * more than one iteration, they run again in order while any pass still
+ * changes the source, stopping as soon as every pass has run once without a
+ * change since the last one that did, which is a fixpoint.
+ *
+ * The manager records how many times each pass ran, how many of those runs
+ * changed the source, and the total time spent in it, over every call to
+ * {@link #run(Ast.Source)}.
+ */
+public final class PassManager {
+
+    /**
+     * Transforms a source, returning the same object if nothing changed.
+     */
+    public interface Pass {
+
+        Ast.Source run(Ast.Source source);
+
+        /**
+         * Returns the name of the pass in {@link Statistics}, which is the
+         * simple name of its class by default.
+         */
+        default String getName() {
+            String name = getClass().getSimpleName();
+            return name.isEmpty() ? getClass().getName() : name;
+        }
+
+    }
+
+    /**
+     * The runs, changes and time recorded for one pass.
+     */
+    public static final class Statistics {
+
+        private final Pass pass;
+        private long runs;
+        private long changes;
+        private long nanos;
+
+        private Statistics(Pass pass) {
+            this.pass = pass;
+        }
+
+        public String getName() {
+            return pass.getName();
+        }
+
+        public long getRuns() {
+            return runs;
+        }
+
+        public long getChanges() {
+            return changes;
+        }
+
+        /**
+         * Returns the total time spent running the pass, in nanoseconds.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return getName() + ": " + runs + " runs, " + changes + " changes, " + nanos / 1000 + "us";
+        }
+
+    }
+
+    private final List<Statistics> statistics = new ArrayList<>();
+    private int maxIterations = 1;
+    private int iterations;
+    private boolean converged;
+
+    public void add(Pass pass) {
+        statistics.add(new Statistics(pass));
+    }
+
+    /**
+     * Sets the maximum number of times the passes are run in order by {@link
+     * #run(Ast.Source)} before giving up on reaching a fixpoint.
+     */
+    public void setMaxIterations(int maxIterations) {
+        if (maxIterations < 1) {
+            throw new IllegalArgumentException("Invalid maximum of " + maxIterations + " iterations.");
+        }
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Runs the passes over {@code source} and returns the result, which is
+     * {@code source} itself if no pass changed it.
+     */
+    public Ast.Source run(Ast.Source source) {
+        iterations = 0;
+        converged = statistics.isEmpty();
+        if (converged) {
+            return source;
+        }
+        int unchanged = 0;
+        while (iterations < maxIterations) {
+            iterations++;
+            for (Statistics pass : statistics) {
+                long start = System.nanoTime();
+                Ast.Source result = pass.pass.run(source);
+                pass.nanos += System.nanoTime() - start;
+                pass.runs++;
+                if (result != source) {
+                    pass.changes++;
+                    source = result;
+                    unchanged = 0;
+                } else if (++unchanged == statistics.size()) {
+                    converged = true;
+                    return source;
+                }
+            }
+        }
+        return source;
+    }
+
+    /**
+     * Returns the number of times the passes were started in order by the
+     * last call to {@link #run(Ast.Source)}, including a partial last one.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Returns {@code true} if the last call to {@link #run(Ast.Source)}
+     * reached a fixpoint, where every pass ran once without changing the
+     * source, rather than stopping at the maximum number of iterations.
+     */
+    public boolean isConverged() {
+        return converged;
+    }
+
+    /**
+     * Returns the statistics of each pass, in the order the passes run.
+     */
+    public List<Statistics> getStatistics() {
+        return Collections.unmodifiableList(statistics);
+    }
+
+}
@@ -0,0 +1,110 @@
+package plc.project;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+
+/**
+ * A {@link Lexer.CharStream} which reads characters from a {@link Reader} on
+ * demand instead of holding the entire input in memory.
+ *
+ * Characters are kept in a ring buffer which only retains the token currently
+ * being matched plus the lookahead requested through {@link #has(int)}. The
+ * buffer starts at the given capacity and only grows if a single token is
+ * longer than that, so memory use is bounded by the longest token rather than
+ * the size of the input.
+ */
+public final class ReaderCharStream extends Lexer.CharStream {
+
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    private final Reader reader;
+    private char[] buffer;
+    private int end = 0;
+    private boolean eof = false;
+
+    public ReaderCharStream(Reader reader) {
+        this(reader, DEFAULT_CAPACITY);
+    }
+
+    public ReaderCharStream(Reader reader, int capacity) {
+        this.reader = reader;
+        this.buffer = new char[Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1];
+    }
+
+    @Override
+    public boolean has(int offset) {
+        while (index + offset >= end && !eof) {
+            fill();
+        }
+        return index + offset < end;
+    }
+
+    @Override
+    public char get(int offset) {
+        if (!has(offset)) {
+            throw new IndexOutOfBoundsException("Index " + (index + offset) + " is past the end of the input.");
+        }
+        return buffer[(index + offset) & (buffer.length - 1)];
+    }
+
+    @Override
+    public Token emit(Token.Type type) {
+        int start = index - length;
+        skip();
+        return new Token(type, substring(start, index), start);
+    }
+
+    /**
+     * Returns the characters between the absolute indices {@code start} and
+     * {@code end}, which must still be retained in the buffer.
+     */
+    private String substring(int start, int end) {
+        int mask = buffer.length - 1;
+        int from = start & mask;
+        int count = end - start;
+        if (from + count <= buffer.length) {
+            return new String(buffer, from, count);
+        }
+        int first = buffer.length - from;
+        return new StringBuilder(count)
+                .append(buffer, from, first)
+                .append(buffer, 0, count - first)
+                .toString();
+    }
+
+    /**
+     * Reads more characters into the free part of the buffer, growing it if
+     * the current token already fills the whole buffer.
+     */
+    private void fill() {
+        int retained = index - length;
+        if (end - retained == buffer.length) {
+            grow(retained);
+        }
+        int mask = buffer.length - 1;
+        int from = end & mask;
+        int free = buffer.length - (end - retained);
+        int count = Math.min(free, buffer.length - from);
+        try {
+            int read = reader.read(buffer, from, count);
+            if (read < 0) {
+                eof = true;
+            } else {
+                end += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void grow(int retained) {
+        char[] grown = new char[buffer.length << 1];
+        int mask = grown.length - 1;
+        for (int i = retained; i < end; i++) {
+            grown[i & mask] = buffer[i & (buffer.length - 1)];
+        }
+        buffer = grown;
+    }
+
+}
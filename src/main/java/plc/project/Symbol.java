@@ -0,0 +1,148 @@
+package plc.project;
+
+/**
+ * Codes for the keywords and operators of the language, which the lexer
+ * attaches to tokens so the parser can dispatch on an int instead of
+ * comparing literals.
+ *
+ * Symbols are found through a perfect hash: the characters of a literal are
+ * packed into a {@code long} one byte at a time, and multiplying the packed
+ * key by {@link #MULTIPLIER} sends every symbol to a different slot of a 64
+ * entry table. A literal is therefore classified with one multiplication and
+ * one comparison against the key stored in its slot. The multiplier was found
+ * by searching offline, and the table is checked for collisions when it is
+ * built.
+ *
+ * Every symbol also has a canonical literal, which the lexer uses for the
+ * tokens of keywords and operators instead of copying them from the input.
+ */
+public final class Symbol {
+
+    public static final int NONE = 0;
+
+    public static final int LIST = 1;
+    public static final int VAR = 2;
+    public static final int VAL = 3;
+    public static final int FUN = 4;
+    public static final int DO = 5;
+    public static final int END = 6;
+    public static final int LET = 7;
+    public static final int SWITCH = 8;
+    public static final int CASE = 9;
+    public static final int DEFAULT = 10;
+    public static final int IF = 11;
+    public static final int ELSE = 12;
+    public static final int WHILE = 13;
+    public static final int RETURN = 14;
+    public static final int NIL = 15;
+    public static final int TRUE = 16;
+    public static final int FALSE = 17;
+
+    public static final int SEMICOLON = 18;
+    public static final int ASSIGN = 19;
+    public static final int LEFT_BRACKET = 20;
+    public static final int RIGHT_BRACKET = 21;
+    public static final int COMMA = 22;
+    public static final int COLON = 23;
+    public static final int LEFT_PAREN = 24;
+    public static final int RIGHT_PAREN = 25;
+    public static final int AND = 26;
+    public static final int OR = 27;
+    public static final int NOT_EQUAL = 28;
+    public static final int EQUAL = 29;
+    public static final int GREATER = 30;
+    public static final int LESS = 31;
+    public static final int PLUS = 32;
+    public static final int MINUS = 33;
+    public static final int CARET = 34;
+    public static final int STAR = 35;
+    public static final int SLASH = 36;
+
+    /**
+     * The longest symbol, since longer literals cannot be packed into a key.
+     */
+    public static final int MAX_LENGTH = 7;
+
+    private static final String[] LITERALS = {
+            null,
+            "LIST", "VAR", "VAL", "FUN", "DO", "END", "LET", "SWITCH", "CASE",
+            "DEFAULT", "IF", "ELSE", "WHILE", "RETURN", "NIL", "TRUE", "FALSE",
+            ";", "=", "[", "]", ",", ":", "(", ")", "&&", "||", "!=", "==",
+            ">", "<", "+", "-", "^", "*", "/"
+    };
+
+    private static final long MULTIPLIER = 0x194d24da49130ff7L;
+    private static final int BITS = 6;
+    private static final long[] KEYS = new long[1 << BITS];
+    private static final byte[] CODES = new byte[1 << BITS];
+
+    static {
+        for (int code = 1; code < LITERALS.length; code++) {
+            long key = 0;
+            for (int i = 0; i < LITERALS[code].length(); i++) {
+                key = pack(key, LITERALS[code].charAt(i));
+            }
+            int slot = slot(key);
+            if (CODES[slot] != NONE) {
+                throw new AssertionError("Symbols " + LITERALS[CODES[slot]] + " and " + LITERALS[code] + " collide.");
+            }
+            KEYS[slot] = key;
+            CODES[slot] = (byte) code;
+        }
+    }
+
+    private Symbol() {}
+
+    /**
+     * Adds a character to a packed key. Characters outside of ASCII are packed
+     * as {@code 0xFF}, which does not appear in any symbol.
+     */
+    public static long pack(long key, char c) {
+        return key << 8 | (c < 0x80 ? c : 0xFF);
+    }
+
+    /**
+     * Returns the code of the symbol with the given packed key, which must have
+     * been packed from at most {@link #MAX_LENGTH} characters, or {@link
+     * #NONE} if it is not a symbol.
+     */
+    public static int lookup(long key) {
+        int slot = slot(key);
+        return KEYS[slot] == key ? CODES[slot] : NONE;
+    }
+
+    /**
+     * Returns the code of the symbol spelled by {@code literal}, or {@link
+     * #NONE} if it is not a symbol.
+     */
+    public static int lookup(CharSequence literal) {
+        return lookup(literal, 0, literal.length());
+    }
+
+    /**
+     * Returns the code of the symbol spelled by the {@code length} characters
+     * of {@code source} starting at {@code start}.
+     */
+    public static int lookup(CharSequence source, int start, int length) {
+        if (length > MAX_LENGTH) {
+            return NONE;
+        }
+        long key = 0;
+        for (int i = start; i < start + length; i++) {
+            key = pack(key, source.charAt(i));
+        }
+        return lookup(key);
+    }
+
+    /**
+     * Returns the canonical literal of a symbol.
+     */
+    public static String literal(int code) {
+        return LITERALS[code];
+    }
+
+    private static int slot(long key) {
+        return (int) (key * MULTIPLIER >>> (64 - BITS));
+    }
+
+}
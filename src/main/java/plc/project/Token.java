@@ -12,13 +12,32 @@ public final class Token {
     }
 
     private final Type type;
-    private final String literal;
+    private CharSequence literal;
     private final int index;
+    private final int code;
 
     public Token(Type type, String literal, int index) {
+        this(type, literal, index, Symbol.lookup(literal));
+    }
+
+    /**
+     * Creates a token whose literal is a view over the source, which is only
+     * copied into a {@link String} the first time {@link #getLiteral()} is
+     * called.
+     */
+    Token(Type type, CharSequence literal, int index) {
+        this(type, literal, index, Symbol.lookup(literal));
+    }
+
+    /**
+     * Creates a token with a {@link Symbol} code already determined by the
+     * lexer.
+     */
+    Token(Type type, CharSequence literal, int index, int code) {
         this.type = type;
         this.literal = literal;
         this.index = index;
+        this.code = code;
     }
 
     public Type getType() {
@@ -26,24 +45,62 @@ public final class Token {
     }
 
     public String getLiteral() {
-        return literal;
+        if (!(literal instanceof String)) {
+            literal = literal.toString();
+        }
+        return (String) literal;
+    }
+
+    /**
+     * Returns true if this token's literal is equal to {@code literal},
+     * comparing characters directly so a literal which is a view over the
+     * source is not copied.
+     */
+    public boolean literalEquals(String literal) {
+        if (this.literal instanceof String) {
+            return this.literal.equals(literal);
+        } else if (this.literal.length() != literal.length()) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (this.literal.charAt(i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public int getIndex() {
         return index;
     }
 
+    /**
+     * Returns the length of this token's literal, without copying a literal
+     * which is a view over the source.
+     */
+    int getLength() {
+        return literal.length();
+    }
+
+    /**
+     * Returns the {@link Symbol} code of this token's literal, or {@link
+     * Symbol#NONE} if it is not a keyword or operator.
+     */
+    public int getCode() {
+        return code;
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof Token
                 && type == ((Token) obj).type
-                && literal.equals(((Token) obj).literal)
+                && getLiteral().equals(((Token) obj).getLiteral())
                 && index == ((Token) obj).index;
     }
 
     @Override
     public String toString() {
-        return type + "=" + literal + "@" + index;
+        return type + "=" + getLiteral() + "@" + index;
     }
 
 }
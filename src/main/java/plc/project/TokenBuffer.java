@@ -0,0 +1,150 @@
+package plc.project;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A packed list of tokens stored as parallel arrays of types, start indices,
+ * lengths and {@link Symbol} codes instead of one {@link Token} object per
+ * token. Literals are sliced from the source only when requested through
+ * {@link #getLiteral(int)}, and {@link #literalEquals(int, String)} compares a
+ * literal without creating it at all.
+ *
+ * {@link #asList()} adapts the buffer to a {@code List<Token>} for code which
+ * expects token objects, creating each token as it is accessed with a literal
+ * which is a view over the source.
+ */
+public final class TokenBuffer {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    private final CharSequence source;
+    private byte[] types;
+    private int[] starts;
+    private int[] lengths;
+    private byte[] codes;
+    private int size = 0;
+
+    public TokenBuffer(CharSequence source) {
+        this(source, 16);
+    }
+
+    public TokenBuffer(CharSequence source, int capacity) {
+        this.source = source;
+        this.types = new byte[Math.max(capacity, 1)];
+        this.starts = new int[types.length];
+        this.lengths = new int[types.length];
+        this.codes = new byte[types.length];
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void add(Token.Type type, int start, int length) {
+        add(type, start, length, Symbol.lookup(source, start, length));
+    }
+
+    /**
+     * Adds a token whose {@link Symbol} code was already determined by the
+     * lexer.
+     */
+    public void add(Token.Type type, int start, int length, int code) {
+        if (size == types.length) {
+            int capacity = types.length << 1;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            codes = Arrays.copyOf(codes, capacity);
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        codes[size] = (byte) code;
+        size++;
+    }
+
+    public Token.Type getType(int i) {
+        return TYPES[types[check(i)]];
+    }
+
+    public int getStart(int i) {
+        return starts[check(i)];
+    }
+
+    public int getLength(int i) {
+        return lengths[check(i)];
+    }
+
+    public int getCode(int i) {
+        return codes[check(i)];
+    }
+
+    public String getLiteral(int i) {
+        if (codes[check(i)] != Symbol.NONE) {
+            return Symbol.literal(codes[i]);
+        }
+        int start = starts[i];
+        return source.subSequence(start, start + lengths[i]).toString();
+    }
+
+    /**
+     * Returns true if the literal of the token at {@code i} is equal to {@code
+     * literal}, comparing against the source directly.
+     */
+    public boolean literalEquals(int i, String literal) {
+        int start = getStart(i);
+        if (lengths[i] != literal.length()) {
+            return false;
+        }
+        for (int j = 0; j < lengths[i]; j++) {
+            if (source.charAt(start + j) != literal.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Token get(int i) {
+        Token.Type type = getType(i);
+        CharSequence literal = codes[i] != Symbol.NONE
+                ? Symbol.literal(codes[i])
+                : new LiteralView(source, starts[i], starts[i] + lengths[i]);
+        return new Token(type, literal, starts[i], codes[i]);
+    }
+
+    /**
+     * Returns a read-only view of this buffer as a list of tokens.
+     */
+    public List<Token> asList() {
+        return new TokenList();
+    }
+
+    private int check(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+        return i;
+    }
+
+    private final class TokenList extends AbstractList<Token> implements RandomAccess {
+
+        @Override
+        public Token get(int index) {
+            return TokenBuffer.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+    }
+
+}
@@ -57,6 +57,23 @@ public final class AnalyzerTests {
                                 )
                         ),
                         null
+                ),
+                // FUN main(): Integer DO RETURN 1; END, with names read from the source
+                Arguments.of("Parsed Main",
+                        new Parser(new Lexer("FUN main(): Integer DO RETURN 1; END").lex()).parseSource(),
+                        new Ast.Source(
+                                Arrays.asList(),
+                                Arrays.asList(
+                                        init(new Ast.Function("main", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+                                                new Ast.Statement.Return(init(new Ast.Expression.Literal(BigInteger.ONE), ast -> ast.setType(Environment.Type.INTEGER))))
+                                        ), ast -> ast.setFunction(new Environment.Function("main", "main", Arrays.asList(), Environment.Type.INTEGER, args -> Environment.NIL)))
+                                )
+                        )
+                ),
+                // FUN main(): Integer DO RETURN TRUE; END
+                Arguments.of("Non-Integer Return from Main",
+                        new Parser(new Lexer("FUN main(): Integer DO RETURN TRUE; END").lex()).parseSource(),
+                        null
                 )
         );
     }
@@ -7,8 +7,13 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 public class LexerTests {
@@ -241,6 +246,114 @@ public class LexerTests {
         Assertions.assertEquals(13, exception.getIndex());
     }
 
+    @ParameterizedTest
+    @MethodSource("testExamples")
+    void testDfaExamples(String test, String input, List<Token> expected) {
+        Assertions.assertEquals(expected, new DfaLexer(input).lex());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testDfaMatchesRegex(String test, String input) {
+        Assertions.assertEquals(new Lexer(input).lex(), new DfaLexer(input).lex());
+    }
+
+    private static Stream<Arguments> testDfaMatchesRegex() {
+        return Stream.of(
+                Arguments.of("Identifiers", "@get_-Name thelegend27 a-b-c"),
+                Arguments.of("Numbers", "-1 12345 7.0000 -1.0 0.1234"),
+                Arguments.of("Escapes", "'\\n' \"a\\tb\\\"c\""),
+                Arguments.of("Operators", "!= == && || - + ;"),
+                Arguments.of("Program", "FUN main(): Integer DO\n    print(\"Hello\");\n    RETURN 1;\nEND")
+        );
+    }
+
+    @Test
+    void testStreaming() {
+        String input = "LET s = \"a string literal which is longer than the buffer\"; print(s);";
+        List<Token> tokens = new ArrayList<>();
+        new DfaLexer(new ReaderCharStream(new StringReader(input), 16)).forEach(tokens::add);
+        Assertions.assertEquals(new Lexer(input).lex(), tokens);
+    }
+
+    @Test
+    void testByteBuffer() {
+        String input = "LET s = \"caf\u00e9 \ud83d\ude00\"; print(s);";
+        ByteBuffer buffer = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(new Lexer(input).lex(), new DfaLexer(new ByteBufferCharStream(buffer)).lex());
+    }
+
+    @ParameterizedTest
+    @MethodSource("testExamples")
+    void testTokenBuffer(String test, String input, List<Token> expected) {
+        Assertions.assertEquals(expected, new DfaLexer(input).lexBuffer().asList());
+    }
+
+    @ParameterizedTest
+    @MethodSource("testExamples")
+    void testLiteralViews(String test, String input, List<Token> expected) {
+        Assertions.assertEquals(expected, new DfaLexer(new Lexer.CharStream(input, true)).lex());
+    }
+
+    @Test
+    void testParallel() {
+        String input = "FUN main(): Integer DO\n" +
+                "    print(\"with spaces \\\" inside\");\n" +
+                "    print(' ');\n" +
+                "    RETURN 1;\n" +
+                "END";
+        List<Token> tokens = new ParallelLexer(new ForkJoinPool(2), 4).lex(input);
+        Assertions.assertEquals(new Lexer(input).lex(), tokens);
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testIncremental(String test, String input, int offset, int removed, String inserted) {
+        IncrementalLexer lexer = new IncrementalLexer(input);
+        List<Token> tokens = lexer.edit(offset, removed, inserted);
+        Assertions.assertEquals(new DfaLexer(lexer.getSource()).lex(), new ArrayList<>(tokens));
+    }
+
+    private static Stream<Arguments> testIncremental() {
+        String input = "LET x = 1;\nprint(\"a b\");\nRETURN x;";
+        return Stream.of(
+                Arguments.of("Extend Identifier", input, 5, 0, "yz"),
+                Arguments.of("Split Identifier", input, 13, 0, " "),
+                Arguments.of("Insert String", input, 11, 0, "\"q r\" "),
+                Arguments.of("Delete Token", input, 4, 6, ""),
+                Arguments.of("Append", input, input.length(), 0, "\nEND"),
+                Arguments.of("Decimal", input, 9, 0, ".5")
+        );
+    }
+
+    @Test
+    void testSymbols() {
+        List<Token> tokens = new DfaLexer("LET LETTER != !").lex();
+        Assertions.assertEquals(Symbol.LET, tokens.get(0).getCode());
+        Assertions.assertSame(Symbol.literal(Symbol.LET), tokens.get(0).getLiteral());
+        Assertions.assertEquals(Symbol.NONE, tokens.get(1).getCode());
+        Assertions.assertEquals(Symbol.NOT_EQUAL, tokens.get(2).getCode());
+        Assertions.assertEquals(Symbol.NONE, tokens.get(3).getCode());
+        Assertions.assertEquals(Symbol.END, new Token(Token.Type.IDENTIFIER, "END", 0).getCode());
+    }
+
+    @Test
+    void testDfaException() {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new DfaLexer("\"unterminated").lex());
+        Assertions.assertEquals(13, exception.getIndex());
+    }
+
+    @Test
+    void testRecovery() {
+        String input = "LET s = \"bad \\q escape\";\nLET n = 01;\nLET u = \"unterminated\nprint(s);";
+        List<ParseException> errors = new ArrayList<>();
+        List<Token> tokens = new DfaLexer(input).lex(errors);
+        Assertions.assertEquals(3, errors.size());
+        Assertions.assertEquals(Arrays.asList(14, 34, 59), Arrays.asList(errors.get(0).getIndex(), errors.get(1).getIndex(), errors.get(2).getIndex()));
+        Assertions.assertEquals(new Token(Token.Type.IDENTIFIER, "print", 59), tokens.get(tokens.size() - 5));
+    }
+
     /**
      * Tests that lexing the input through {@link Lexer#lexToken()} produces a
      * single token with the expected type and literal matching the input.
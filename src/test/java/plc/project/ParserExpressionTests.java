@@ -124,6 +124,10 @@ final class ParserExpressionTests {
                 Arguments.of("Escape Character",
                         Arrays.asList(new Token(Token.Type.STRING, "\"Hello,\\nWorld!\"", 0)),
                         new Ast.Expression.Literal("Hello,\nWorld!")
+                ),
+                Arguments.of("Escaped Backslash",
+                        Arrays.asList(new Token(Token.Type.STRING, "\"\\\\n\"", 0)),
+                        new Ast.Expression.Literal("\\n")
                 )
         );
     }
@@ -362,6 +366,45 @@ final class ParserExpressionTests {
         );
     }
 
+    @Test
+    void testBinaryPrecedence() {
+        //a - b - c * d ^ e + f == g && h
+        List<Token> tokens = new DfaLexer("a - b - c * d ^ e + f == g && h").lex();
+        Ast.Expression expected = new Ast.Expression.Binary("&&",
+                new Ast.Expression.Binary("==",
+                        new Ast.Expression.Binary("+",
+                                new Ast.Expression.Binary("-",
+                                        new Ast.Expression.Binary("-",
+                                                new Ast.Expression.Access(Optional.empty(), "a"),
+                                                new Ast.Expression.Access(Optional.empty(), "b")
+                                        ),
+                                        new Ast.Expression.Binary("^",
+                                                new Ast.Expression.Binary("*",
+                                                        new Ast.Expression.Access(Optional.empty(), "c"),
+                                                        new Ast.Expression.Access(Optional.empty(), "d")
+                                                ),
+                                                new Ast.Expression.Access(Optional.empty(), "e")
+                                        )
+                                ),
+                                new Ast.Expression.Access(Optional.empty(), "f")
+                        ),
+                        new Ast.Expression.Access(Optional.empty(), "g")
+                ),
+                new Ast.Expression.Access(Optional.empty(), "h")
+        );
+        test(tokens, expected, Parser::parseExpression);
+    }
+
+    @Test
+    void testLongBinaryChain() {
+        StringBuilder input = new StringBuilder("x");
+        for (int i = 0; i < 100000; i++) {
+            input.append(" + x");
+        }
+        Ast.Expression expression = new Parser(new DfaLexer(input.toString()).lexBuffer()).parseExpression();
+        Assertions.assertEquals(new Ast.Expression.Access(Optional.empty(), "x"), ((Ast.Expression.Binary) expression).getRight());
+    }
+
     @ParameterizedTest
     @MethodSource
     void ErrorHandling(String test, List<Token> tokens, Ast.Expression expected) {
@@ -2,16 +2,29 @@ package plc.project;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -637,6 +650,473 @@ final class ParserTests {
         test(input, expected, Parser::parseSource);
     }
 
+    @Test
+    void testStreamingSource() {
+        String input = "VAR first: Integer = 1;\n" +
+                "FUN main(): Integer DO\n" +
+                "    WHILE first != 10 DO\n" +
+                "        print(first);\n" +
+                "        first = first + 1;\n" +
+                "    END\n" +
+                "END";
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Parser parser = new Parser(new DfaLexer(new StringReader(input)).iterator());
+        Assertions.assertEquals(expected, parser.parseSource());
+    }
+
+    @Test
+    void testTokenBufferSource() {
+        String input = "VAL name: Integer = 1;\n" +
+                "FUN main(): Integer DO\n" +
+                "    IF name > 1 DO\n" +
+                "        print(\"big\");\n" +
+                "    END\n" +
+                "    RETURN name;\n" +
+                "END";
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(expected, new Parser(new DfaLexer(input).lexBuffer()).parseSource());
+    }
+
+    @Test
+    void testLiteralViewSource() {
+        String input = "VAR name: String = \"view\";\n" +
+                "FUN main(): Integer DO\n" +
+                "    print(name);\n" +
+                "    RETURN 1;\n" +
+                "END";
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(expected, new Parser(new DfaLexer(new Lexer.CharStream(input, true)).lex()).parseSource());
+    }
+
+    @Test
+    void testStackSafeSource() {
+        String input = "VAR first: Integer = 1;\n" +
+                "FUN main(): Integer DO\n" +
+                "    SWITCH first\n" +
+                "        CASE 1:\n" +
+                "            IF f(x[first], (first + 2) * 3) DO print(1); ELSE print(2); END\n" +
+                "        DEFAULT\n" +
+                "            WHILE first != 10 DO first = first + 1; END\n" +
+                "    END\n" +
+                "    RETURN first;\n" +
+                "END";
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Parser parser = new Parser(new DfaLexer(input).lexBuffer());
+        parser.setStackSafe(true);
+        Assertions.assertEquals(expected, parser.parseSource());
+    }
+
+    @Test
+    void testStackSafeNesting() {
+        int depth = 100000;
+        StringBuilder input = new StringBuilder("FUN main() DO\n");
+        for (int i = 0; i < depth; i++) {
+            input.append("IF x DO ");
+        }
+        input.append("RETURN ");
+        for (int i = 0; i < depth; i++) {
+            input.append("f((");
+        }
+        input.append("1");
+        for (int i = 0; i < depth; i++) {
+            input.append("))");
+        }
+        input.append(";");
+        for (int i = 0; i < depth; i++) {
+            input.append(" END");
+        }
+        input.append("\nEND");
+        Parser parser = new Parser(new DfaLexer(input.toString()).lexBuffer());
+        parser.setStackSafe(true);
+        Ast.Statement statement = parser.parseSource().getFunctions().get(0).getStatements().get(0);
+        for (int i = 1; i < depth; i++) {
+            statement = ((Ast.Statement.If) statement).getThenStatements().get(0);
+        }
+        Assertions.assertTrue(((Ast.Statement.If) statement).getThenStatements().get(0) instanceof Ast.Statement.Return);
+    }
+
+    @Test
+    void testParallelSource() {
+        StringBuilder input = new StringBuilder("VAR first: Integer = 1;\n");
+        for (int i = 0; i < 10; i++) {
+            input.append("FUN f").append(i).append("(x: Integer): Integer DO\n")
+                    .append("    SWITCH x CASE 1: IF x > 1 DO print(x); END DEFAULT RETURN x; END\n")
+                    .append("    WHILE x != 10 DO x = x + 1; END\n")
+                    .append("    RETURN x;\n")
+                    .append("END\n");
+        }
+        List<Token> tokens = new DfaLexer(input.toString()).lex();
+        Ast.Source expected = new Parser(tokens).parseSource();
+        Assertions.assertEquals(expected, new ParallelParser(new ForkJoinPool(2), 2).parse(tokens));
+    }
+
+    @Test
+    void testParallelSourceException() {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            input.append("FUN f").append(i).append("() DO RETURN ").append(i == 7 ? "" : "1").append("; END\n");
+        }
+        TokenBuffer tokens = new DfaLexer(input.toString()).lexBuffer();
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parseSource());
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new ParallelParser(new ForkJoinPool(2), 2).parse(tokens));
+        Assertions.assertEquals(expected.getIndex(), exception.getIndex());
+    }
+
+    @Test
+    void testLazySource() {
+        String input = "VAR first: Integer = 1;\n" +
+                "FUN main(): Integer DO\n" +
+                "    SWITCH first CASE 1: IF first > 1 DO print(first); END DEFAULT RETURN first; END\n" +
+                "    WHILE first != 10 DO first = first + 1; END\n" +
+                "    RETURN first;\n" +
+                "END";
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Parser parser = new Parser(new DfaLexer(input).lexBuffer());
+        parser.setLazy(true);
+        Assertions.assertEquals(expected, parser.parseSource());
+    }
+
+    @Test
+    void testLazyShared() {
+        Parser parser = new Parser(new DfaLexer("FUN main(): Integer DO print(1); RETURN 1; END").lexBuffer());
+        parser.setLazy(true);
+        Ast.Function function = parser.parseSource().getFunctions().get(0);
+        List<List<Ast.Statement>> statements = ForkJoinPool.commonPool().submit(() ->
+                Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8).parallelStream()
+                        .map(i -> function.getStatements())
+                        .collect(Collectors.toList())).join();
+        for (List<Ast.Statement> list : statements) {
+            Assertions.assertSame(function.getStatements(), list);
+        }
+    }
+
+    @Test
+    void testLazyException() {
+        Parser parser = new Parser(new DfaLexer("FUN unused() DO RETURN ; END\nFUN main(): Integer DO RETURN 1; END").lex());
+        parser.setLazy(true);
+        Ast.Source source = parser.parseSource();
+        Assertions.assertEquals("main", source.getFunctions().get(1).getName());
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> source.getFunctions().get(0).getStatements());
+        Assertions.assertEquals(23, exception.getIndex());
+    }
+
+    @Test
+    void testRecovery() {
+        String input = String.join("\n",
+                "VAR x: Integer = ;",
+                "FUN main(): Integer DO",
+                "    LET a = 1",
+                "    IF a DO b = ; ELSE c; END",
+                "    RETURN a;",
+                "END",
+                "FUN f() DO WHILE x DO y; END"
+        );
+        List<ParseException> errors = new ArrayList<>();
+        Ast.Source source = new Parser(new Lexer(input).lex()).parseSource(errors);
+        Assertions.assertEquals(Arrays.asList(17, 60, 72, 132), errors.stream().map(ParseException::getIndex).collect(Collectors.toList()));
+        Assertions.assertEquals(
+                new Ast.Source(
+                        Arrays.asList(),
+                        Arrays.asList(new Ast.Function("main", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+                                new Ast.Statement.Error("Invalid expression", 60),
+                                new Ast.Statement.If(
+                                        new Ast.Expression.Access(Optional.empty(), "a"),
+                                        Arrays.asList(new Ast.Statement.Error("Invalid expression", 72)),
+                                        Arrays.asList(new Ast.Statement.Expression(new Ast.Expression.Access(Optional.empty(), "c")))
+                                ),
+                                new Ast.Statement.Return(new Ast.Expression.Access(Optional.empty(), "a"))
+                        )))
+                ),
+                source
+        );
+        ParseException exception = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(input).lex()).parseSource());
+        Assertions.assertEquals(errors.get(0).getIndex(), exception.getIndex());
+        Parser parser = new Parser(new Lexer(input).lex());
+        parser.setStackSafe(true);
+        Assertions.assertEquals(source, parser.parseSource(new ArrayList<>()));
+    }
+
+    @Test
+    void testIncrementalParser() {
+        String input = String.join("\n",
+                "VAL x: Integer = 1;",
+                "FUN f(): Integer DO RETURN x; END",
+                "FUN main(): Integer DO RETURN f(); END"
+        );
+        IncrementalParser parser = new IncrementalParser(input);
+        Ast.Source before = parser.getSource();
+        int offset = input.indexOf("x; END");
+        Ast.Source after = parser.edit(offset, offset + 1, "x + 2");
+        Assertions.assertEquals(new Parser(new Lexer(parser.getText()).lex()).parseSource(), after);
+        Assertions.assertSame(before.getGlobals().get(0), after.getGlobals().get(0));
+        Assertions.assertSame(before.getFunctions().get(1), after.getFunctions().get(1));
+        Assertions.assertEquals(1, parser.getReparsed());
+        String text = parser.getText();
+        Assertions.assertThrows(ParseException.class, () -> parser.edit(text.length(), text.length(), "\nVAL y: Integer = 2;"));
+        Assertions.assertSame(after, parser.getSource());
+        after = parser.edit(text.length(), text.length(), "\nFUN g() DO END");
+        Assertions.assertEquals(new Parser(new Lexer(parser.getText()).lex()).parseSource(), after);
+        Assertions.assertEquals(1, parser.getFallbacks());
+    }
+
+    @Test
+    void testFlatAst() {
+        String input = String.join("\n",
+                "VAR x: Integer;",
+                "FUN main(y: Integer): Integer DO",
+                "    SWITCH y CASE 1: x = list[y]; DEFAULT print(\"a\", 'b', 1.5); END",
+                "    IF x == NIL DO RETURN (x + 1); ELSE WHILE TRUE DO LET z; END END",
+                "    RETURN 1;",
+                "END"
+        );
+        Ast.Source source = new Parser(new Lexer(input).lex()).parseSource();
+        FlatAst flat = FlatAst.of(source);
+        Assertions.assertEquals(source, flat.toAst());
+        int[] visited = {0};
+        flat.walk(cursor -> {
+            Assertions.assertEquals(visited[0]++, cursor.getNode());
+            return true;
+        });
+        Assertions.assertEquals(flat.size(), visited[0]);
+        Assertions.assertEquals(Ast.GLOBAL, flat.getKind(1));
+        Assertions.assertEquals("x", flat.getName(1));
+        Assertions.assertEquals(-1, flat.getChild(1, 0));
+    }
+
+    @Test
+    void testAstInterner() {
+        String input = String.join("\n",
+                "VAR x: Integer = 1 + 2;",
+                "FUN f(y: Integer): Integer DO",
+                "    IF y == 1 + 2 DO print(y, (1 + 2)); END",
+                "    RETURN y;",
+                "END",
+                "FUN g(y: Integer): Integer DO",
+                "    IF y == 1 + 2 DO print(y, (1 + 2)); END",
+                "    RETURN y;",
+                "END"
+        );
+        Ast.Source source = new Parser(new Lexer(input).lex()).parseSource();
+        AstInterner interner = new AstInterner();
+        Ast.Source interned = interner.intern(source);
+        Assertions.assertEquals(source, interned);
+        Assertions.assertSame(interned.getFunctions().get(0).getStatements(), interned.getFunctions().get(1).getStatements());
+        Ast.Expression sum = interned.getGlobals().get(0).getValue().get();
+        Ast.Expression built = new Ast.Expression.Binary("+",
+                new Ast.Expression.Literal(BigInteger.ONE), new Ast.Expression.Literal(BigInteger.valueOf(2)));
+        Assertions.assertSame(sum, interner.intern(built));
+        Assertions.assertNotSame(sum, interner.intern(new Ast.Expression.Binary("-",
+                new Ast.Expression.Literal(BigInteger.ONE), new Ast.Expression.Literal(BigInteger.valueOf(2)))));
+    }
+
+    @Test
+    void testSpans() {
+        String input = String.join("\n",
+                "VAR x: Integer = 1;",
+                "FUN main(): Integer DO",
+                "    IF x == 1 DO",
+                "        print(x + 2);",
+                "    END",
+                "    RETURN x;",
+                "END"
+        );
+        LineIndex lines = new LineIndex(input);
+        for (boolean stackSafe : new boolean[] {false, true}) {
+            Parser parser = new Parser(new Lexer(input).lex());
+            parser.setStackSafe(stackSafe);
+            Ast.Source source = parser.parseSource();
+            Ast.Global global = source.getGlobals().get(0);
+            Assertions.assertEquals("VAR x: Integer = 1;", input.substring(global.getStart(), global.getEnd()));
+            Ast.Statement.If statement = (Ast.Statement.If) source.getFunctions().get(0).getStatements().get(0);
+            Assertions.assertEquals("3:5", lines.format(statement.getStart()));
+            Assertions.assertEquals("5:8", lines.format(statement.getEnd()));
+            Ast.Expression.Function call = (Ast.Expression.Function)
+                    ((Ast.Statement.Expression) statement.getThenStatements().get(0)).getExpression();
+            Assertions.assertEquals("print(x + 2)", input.substring(call.getStart(), call.getEnd()));
+            Ast.Expression sum = call.getArguments().get(0);
+            Assertions.assertEquals("x + 2", input.substring(sum.getStart(), sum.getEnd()));
+            AstCodec codec = new AstCodec();
+            Ast.Source decoded = codec.decode(codec.encode(source));
+            Assertions.assertEquals(statement.getEnd(), decoded.getFunctions().get(0).getStatements().get(0).getEnd());
+        }
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer("FUN main() DO\n    RETURN 1\nEND").lex()).parseSource());
+        Assertions.assertEquals("3:1", new LineIndex("FUN main() DO\n    RETURN 1\nEND").format(exception.getIndex()));
+    }
+
+    @Test
+    void testPassManager() {
+        String input = "FUN main(): Integer DO print((1 + 2) + 3); RETURN 1; END";
+        Ast.Source source = new Parser(new Lexer(input).lex()).parseSource();
+        PassManager manager = new PassManager();
+        manager.add(new AstRewriter() {
+            @Override
+            public Ast visit(Ast.Expression.Binary ast) {
+                Ast.Expression.Binary binary = (Ast.Expression.Binary) super.visit(ast);
+                if (binary.getLeft() instanceof Ast.Expression.Literal && binary.getRight() instanceof Ast.Expression.Literal) {
+                    BigInteger left = (BigInteger) ((Ast.Expression.Literal) binary.getLeft()).getLiteral();
+                    BigInteger right = (BigInteger) ((Ast.Expression.Literal) binary.getRight()).getLiteral();
+                    return span(new Ast.Expression.Literal(left.add(right)), ast);
+                }
+                return binary;
+            }
+        });
+        manager.add(new AstRewriter() {
+            @Override
+            public Ast visit(Ast.Expression.Group ast) {
+                Ast.Expression.Group group = (Ast.Expression.Group) super.visit(ast);
+                return group.getExpression() instanceof Ast.Expression.Literal ? group.getExpression() : group;
+            }
+        });
+        manager.setMaxIterations(10);
+        Ast.Source optimized = manager.run(source);
+        Assertions.assertEquals(new Ast.Statement.Expression(new Ast.Expression.Function("print",
+                Arrays.asList(new Ast.Expression.Literal(BigInteger.valueOf(6))))), optimized.getFunctions().get(0).getStatements().get(0));
+        Assertions.assertSame(source.getFunctions().get(0).getStatements().get(1), optimized.getFunctions().get(0).getStatements().get(1));
+        Assertions.assertTrue(manager.isConverged());
+        Assertions.assertEquals(3, manager.getIterations());
+        Assertions.assertEquals(2, manager.getStatistics().get(0).getChanges());
+        Assertions.assertEquals(1, manager.getStatistics().get(1).getChanges());
+        Assertions.assertSame(optimized, manager.run(optimized));
+        Assertions.assertEquals(1, manager.getIterations());
+
+        AstRewriter removeReturns = new AstRewriter() {
+            @Override
+            public Ast visit(Ast.Statement.Return ast) {
+                return null;
+            }
+        };
+        Assertions.assertEquals(1, removeReturns.run(optimized).getFunctions().get(0).getStatements().size());
+        AstRewriter removeLiterals = new AstRewriter() {
+            @Override
+            public Ast visit(Ast.Expression.Literal ast) {
+                return null;
+            }
+        };
+        Assertions.assertThrows(IllegalStateException.class, () -> removeLiterals.run(optimized));
+    }
+
+    @Test
+    void testParseCache() {
+        String first = "FUN main(): Integer DO RETURN 1; END";
+        String second = "FUN main(): Integer DO RETURN 2; END";
+        ParseCache cache = new ParseCache(1);
+        Ast.Source source = cache.parse(first);
+        Assertions.assertEquals(new Parser(new Lexer(first).lex()).parseSource(), source);
+        Assertions.assertSame(source, cache.parse(first));
+        cache.parse(second);
+        cache.parse(first);
+        Assertions.assertEquals(1, cache.getHits());
+        Assertions.assertEquals(3, cache.getMisses());
+        Assertions.assertEquals(2, cache.getEvictions());
+    }
+
+    @Test
+    void testAstCodec() {
+        String input = String.join("\n",
+                "VAL pi: Decimal = 1.0;",
+                "LIST list: Decimal = [pi, -2.50];",
+                "VAR big: Integer = 123456789012345678901234567890;",
+                "VAL name: String = \"caf\u00e9\\n\";",
+                "FUN main(x: Integer, y: Character): Integer DO",
+                "    LET z = NIL;",
+                "    SWITCH y CASE 'a': z = list[1]; DEFAULT print(TRUE, (x - -1) * 2); END",
+                "    IF x < 1 && FALSE DO RETURN x; ELSE WHILE x != 1 DO x = x - 1; END END",
+                "    RETURN 1;",
+                "END",
+                "FUN f() DO END"
+        );
+        Ast.Source source = new Parser(new Lexer(input).lex()).parseSource();
+        AstCodec codec = new AstCodec();
+        Assertions.assertEquals(source, codec.decode(codec.encode(source)));
+    }
+
+    @Test
+    void testAstCodecStream() throws IOException {
+        Ast.Source first = new Parser(new Lexer("VAL x: String = \"first\";").lex()).parseSource();
+        Ast.Source second = new Parser(new Lexer("FUN main() DO print(1); END").lex()).parseSource();
+        AstCodec codec = new AstCodec();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.encode(first, out);
+        codec.encode(second, out);
+        out.write(new byte[] {1, 2, 3});
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(out.toByteArray()));
+        Assertions.assertEquals(first, codec.decode(in));
+        Assertions.assertEquals(second, codec.decode(in));
+        Assertions.assertEquals(3, in.available());
+    }
+
+    @Test
+    void testAstCodecCorrupt() {
+        byte[] bytes = {'P', 'L', 'C', 'A', 2, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 7};
+        AstCodec codec = new AstCodec();
+        UncheckedIOException exception = Assertions.assertThrows(UncheckedIOException.class, () -> codec.decode(bytes));
+        Assertions.assertEquals("Corrupt encoding.", exception.getCause().getMessage());
+        Assertions.assertThrows(IOException.class, () -> codec.decode(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    void testParseCacheDirectory(@TempDir Path directory) {
+        String input = "FUN main(): Integer DO RETURN 1; END";
+        Ast.Source source = new ParseCache(1, directory).parse(input);
+        ParseCache cache = new ParseCache(1, directory);
+        Assertions.assertEquals(source, cache.parse(input));
+        Assertions.assertEquals(1, cache.getDiskHits());
+        Assertions.assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    void testParseCacheCorruptEntry(@TempDir Path directory) throws IOException {
+        String input = "FUN main(): Integer DO RETURN 1; END";
+        byte[] corrupt = {'P', 'L', 'C', 'A', 2, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 7};
+        Files.write(directory.resolve(ParseCache.hash(input) + ".ast"), corrupt);
+        ParseCache cache = new ParseCache(4, directory, new AstCodec());
+        Assertions.assertEquals(new Parser(new Lexer(input).lex()).parseSource(), cache.parse(input));
+        Assertions.assertEquals(0, cache.getDiskHits());
+        Assertions.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void testParseCacheStoreFailure(@TempDir Path directory) throws IOException {
+        ParseCache.Codec codec = new ParseCache.Codec() {
+
+            @Override
+            public byte[] encode(Ast.Source source) {
+                throw new UncheckedIOException(new IOException("Disk full"));
+            }
+
+            @Override
+            public Ast.Source decode(byte[] bytes) {
+                throw new AssertionError();
+            }
+
+        };
+        String input = "FUN main(): Integer DO RETURN 1; END";
+        Ast.Source source = new ParseCache(1, directory, codec).parse(input);
+        Assertions.assertEquals(new Parser(new Lexer(input).lex()).parseSource(), source);
+        try (Stream<Path> files = Files.list(directory)) {
+            Assertions.assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void testStackSafeKeywordLiterals() {
+        String[] inputs = {
+                "VAL x: Any = TRUE[1];",
+                "VAL x: Any = NIL(2, 3);",
+                "FUN main() DO WHILE x > FALSE (b) DO END END",
+        };
+        for (boolean stackSafe : new boolean[] {false, true}) {
+            for (String input : inputs) {
+                Parser parser = new Parser(new Lexer(input).lex());
+                parser.setStackSafe(stackSafe);
+                Assertions.assertThrows(ParseException.class, parser::parseSource, input);
+            }
+        }
+    }
+
     /**
      * Standard test function. If expected is null, a ParseException is expected
      * to be thrown (not used in the provided tests).